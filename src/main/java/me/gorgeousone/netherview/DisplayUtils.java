@@ -8,54 +8,41 @@ import com.comphenix.protocol.wrappers.ChunkCoordIntPair;
 import com.comphenix.protocol.wrappers.MultiBlockChangeInfo;
 import me.gorgeousone.netherview.blocktype.BlockType;
 import me.gorgeousone.netherview.threedstuff.BlockVec;
-import org.bukkit.Location;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
 import org.bukkit.World;
 import org.bukkit.entity.Player;
 
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class DisplayUtils {
 	
-	public static void removeFakeBlocks(Player player, Map<BlockVec, BlockType> blockCopies) {
+	public static void removeFakeBlocks(Player player, BlockTypeMap blockCopies) {
 		
 		World playerWorld = player.getWorld();
-		Map<BlockVec, BlockType> updatedBlockCopies = new HashMap<>();
+		BlockTypeMap updatedBlockCopies = new BlockTypeMap(blockCopies.size());
 		
-		for (BlockVec blockPos : blockCopies.keySet())
-			updatedBlockCopies.put(blockPos.clone(), BlockType.of(blockPos.toBlock(playerWorld)));
+		blockCopies.forEach((packedPos, blockType) -> updatedBlockCopies.put(packedPos, BlockType.of(playerWorld.getBlockAt(
+				BlockVec.getPackedX(packedPos),
+				BlockVec.getPackedY(packedPos),
+				BlockVec.getPackedZ(packedPos)))));
 		
 		displayFakeBlocks(player, updatedBlockCopies);
 	}
 	
-	public static void displayFakeBlocks(Player player, Map<BlockVec, BlockType> blockCopies) {
+	public static void displayFakeBlocks(Player player, BlockTypeMap blockCopies) {
 		
 		ProtocolManager protocolManager = ProtocolLibrary.getProtocolManager();
 		
-		World playerWorld = player.getWorld();
-		Map<BlockVec, Map<BlockVec, BlockType>> sortedBlockTypes = getSortedByChunks(blockCopies);
-		
-		for (Map.Entry<BlockVec, Map<BlockVec, BlockType>> chunkEntry : sortedBlockTypes.entrySet()) {
-			
-			BlockVec chunkPos = chunkEntry.getKey();
-			Map<BlockVec, BlockType> chunkBlockTypes = chunkEntry.getValue();
+		for (List<MultiBlockChangeInfo> chunkBlockInfos : getSortedByChunks(blockCopies).values()) {
 			
 			//create an empty multi block change packet
 			PacketContainer fakeBlocksPacket = protocolManager.createPacket(PacketType.Play.Server.MULTI_BLOCK_CHANGE);
-			fakeBlocksPacket.getChunkCoordIntPairs().write(0, new ChunkCoordIntPair(chunkPos.getX(), chunkPos.getZ()));
-			
-			MultiBlockChangeInfo[] blockInfo = new MultiBlockChangeInfo[chunkBlockTypes.size()];
-			int i = 0;
-			
-			for (Map.Entry<BlockVec, BlockType> entry : chunkBlockTypes.entrySet()) {
-				
-				Location blockLoc = entry.getKey().toLocation(playerWorld);
-				blockInfo[i] = new MultiBlockChangeInfo(blockLoc, entry.getValue().getWrapped());
-				i++;
-			}
-			
-			fakeBlocksPacket.getMultiBlockChangeInfoArrays().write(0, blockInfo);
+			fakeBlocksPacket.getChunkCoordIntPairs().write(0, chunkBlockInfos.get(0).getChunk());
+			fakeBlocksPacket.getMultiBlockChangeInfoArrays().write(0, chunkBlockInfos.toArray(new MultiBlockChangeInfo[0]));
 			
 			try {
 				protocolManager.sendServerPacket(player, fakeBlocksPacket);
@@ -65,19 +52,34 @@ public class DisplayUtils {
 		}
 	}
 	
-	private static Map<BlockVec, Map<BlockVec, BlockType>> getSortedByChunks(Map<BlockVec, BlockType> blockCopies) {
+	/**
+	 * Returns the infos for multi block change packets of the passed blocks, listed by the packed position of the chunk they are in.
+	 * Block types are only looked up for their cached block data, so this mostly consists of grouping the blocks.
+	 */
+	public static Map<Long, List<MultiBlockChangeInfo>> getSortedByChunks(BlockTypeMap blockCopies) {
 		
-		Map<BlockVec, Map<BlockVec, BlockType>> sortedBlockCopies = new HashMap<>();
+		Map<Long, List<MultiBlockChangeInfo>> sortedBlockInfos = new HashMap<>();
 		
-		for (Map.Entry<BlockVec, BlockType> entry : blockCopies.entrySet()) {
+		blockCopies.forEach((packedPos, blockType) -> {
 			
-			BlockVec blockPos = entry.getKey();
-			BlockVec chunkPos = new BlockVec(blockPos.getX() >> 4, 0, blockPos.getZ() >> 4);
+			int x = BlockVec.getPackedX(packedPos);
+			int y = BlockVec.getPackedY(packedPos);
+			int z = BlockVec.getPackedZ(packedPos);
 			
-			sortedBlockCopies.putIfAbsent(chunkPos, new HashMap<>());
-			sortedBlockCopies.get(chunkPos).put(blockPos, entry.getValue());
-		}
+			long chunkKey = (long) (x >> 4) << 32 | (z >> 4) & 0xFFFFFFFFL;
+			List<MultiBlockChangeInfo> chunkBlockInfos = sortedBlockInfos.get(chunkKey);
+			
+			if (chunkBlockInfos == null) {
+				chunkBlockInfos = new ArrayList<>();
+				sortedBlockInfos.put(chunkKey, chunkBlockInfos);
+			}
+			
+			//all infos of a chunk share the chunk position of the first one
+			ChunkCoordIntPair chunkPos = chunkBlockInfos.isEmpty() ? new ChunkCoordIntPair(x >> 4, z >> 4) : chunkBlockInfos.get(0).getChunk();
+			short relativePos = (short) ((x & 15) << 12 | (z & 15) << 8 | y);
+			chunkBlockInfos.add(new MultiBlockChangeInfo(relativePos, blockType.getWrapped(), chunkPos));
+		});
 		
-		return sortedBlockCopies;
+		return sortedBlockInfos;
 	}
 }
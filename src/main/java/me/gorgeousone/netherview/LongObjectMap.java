@@ -0,0 +1,187 @@
+package me.gorgeousone.netherview;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * A map from primitive longs (e.g. packed block or chunk positions) to objects, so lookups and inserts do not box their keys.
+ * Entries are stored in an open addressing hash table with linear probing. Null values are not supported.
+ */
+public class LongObjectMap<V> {
+	
+	private static final int MIN_CAPACITY = 16;
+	
+	private long[] keys;
+	private Object[] values;
+	private int size;
+	
+	public LongObjectMap() {
+		keys = new long[MIN_CAPACITY];
+		values = new Object[MIN_CAPACITY];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Returns the value stored for the key or null if there is none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		return (V) values[findSlot(keys, values, key)];
+	}
+	
+	/**
+	 * Returns the value stored for the key or the passed default value if there is none.
+	 */
+	public V getOrDefault(long key, V defaultValue) {
+		
+		V value = get(key);
+		return value != null ? value : defaultValue;
+	}
+	
+	/**
+	 * Stores the value for the key, replacing any previous one.
+	 *
+	 * @param value a value that is not null
+	 */
+	public void put(long key, V value) {
+		
+		if (value == null) {
+			throw new IllegalArgumentException("Cannot store null for key " + key);
+		}
+		
+		int slot = findSlot(keys, values, key);
+		
+		if (values[slot] == null) {
+			
+			if ((size + 1) * 2 > keys.length) {
+				grow();
+				slot = findSlot(keys, values, key);
+			}
+			
+			keys[slot] = key;
+			size++;
+		}
+		
+		values[slot] = value;
+	}
+	
+	/**
+	 * Returns the value stored for the key. If there is none, the value is created with the passed function and stored first.
+	 */
+	public V computeIfAbsent(long key, LongFunction<V> valueFactory) {
+		
+		V value = get(key);
+		
+		if (value == null) {
+			value = valueFactory.apply(key);
+			put(key, value);
+		}
+		
+		return value;
+	}
+	
+	/**
+	 * Removes the value stored for the key and returns it or null if there was none.
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		
+		int slot = findSlot(keys, values, key);
+		V removedValue = (V) values[slot];
+		
+		if (removedValue == null) {
+			return null;
+		}
+		
+		values[slot] = null;
+		size--;
+		
+		//move following entries of the probe sequence back into the gap, so no lookups are interrupted by it
+		int mask = keys.length - 1;
+		int gap = slot;
+		int next = (slot + 1) & mask;
+		
+		while (values[next] != null) {
+			
+			int home = getHomeSlot(keys[next], mask);
+			
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				values[next] = null;
+				gap = next;
+			}
+			
+			next = (next + 1) & mask;
+		}
+		
+		return removedValue;
+	}
+	
+	public void clear() {
+		
+		Arrays.fill(values, null);
+		size = 0;
+	}
+	
+	/**
+	 * Passes every value of the map to the consumer. The map must not be changed while iterating.
+	 */
+	@SuppressWarnings("unchecked")
+	public void forEachValue(Consumer<V> consumer) {
+		
+		for (Object value : values) {
+			if (value != null) {
+				consumer.accept((V) value);
+			}
+		}
+	}
+	
+	private static int findSlot(long[] keys, Object[] values, long key) {
+		
+		int mask = keys.length - 1;
+		int slot = getHomeSlot(key, mask);
+		
+		while (values[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private static int getHomeSlot(long key, int mask) {
+		
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32) & mask;
+	}
+	
+	private void grow() {
+		
+		long[] oldKeys = keys;
+		Object[] oldValues = values;
+		
+		long[] newKeys = new long[oldKeys.length * 2];
+		Object[] newValues = new Object[oldKeys.length * 2];
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null) {
+				
+				int slot = findSlot(newKeys, newValues, oldKeys[i]);
+				newKeys[slot] = oldKeys[i];
+				newValues[slot] = oldValues[i];
+			}
+		}
+		
+		keys = newKeys;
+		values = newValues;
+	}
+}
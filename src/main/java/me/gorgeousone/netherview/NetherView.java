@@ -8,9 +8,12 @@ import me.gorgeousone.netherview.commmands.EnableDebugCommand;
 import me.gorgeousone.netherview.commmands.ListPortalsCommand;
 import me.gorgeousone.netherview.commmands.PortalInfoCommand;
 import me.gorgeousone.netherview.commmands.ReloadCommand;
+import me.gorgeousone.netherview.handlers.BlockChangeQueue;
 import me.gorgeousone.netherview.handlers.PortalHandler;
 import me.gorgeousone.netherview.handlers.ViewHandler;
+import me.gorgeousone.netherview.handlers.ViewUpdateScheduler;
 import me.gorgeousone.netherview.listeners.BlockListener;
+import me.gorgeousone.netherview.listeners.ChunkPacketListener;
 import me.gorgeousone.netherview.listeners.PlayerMoveListener;
 import me.gorgeousone.netherview.listeners.TeleportListener;
 import me.gorgeousone.netherview.portal.PortalLocator;
@@ -44,17 +47,27 @@ public final class NetherView extends JavaPlugin {
 	public final static String INFO_PERM = "netherview.info";
 	
 	private boolean isLegacyServer;
+	private boolean supportsChunkPacketRewriting;
 	private Material portalMaterial;
 	
 	private PortalHandler portalHandler;
 	private ViewHandler viewHandler;
+	private ViewUpdateScheduler viewUpdateScheduler;
+	private BlockChangeQueue blockChangeQueue;
 	
 	private Set<UUID> worldsWithPortalViewing;
 	
 	private int portalProjectionDist;
 	private int portalDisplayRangeSquared;
+	private int viewPointGridSize;
+	private long viewUpdateBudgetNanos;
+	private int maxFakeBlocksPerTick;
+	private double lodStartDistance;
+	private int lodDetailDepth;
 	
 	private boolean hidePortalBlocks;
+	private boolean useVirtualProjections;
+	private boolean rewriteChunkPackets;
 	private boolean cancelTeleportWhenLinking;
 	private boolean debugMessagesEnabled;
 	
@@ -73,6 +86,9 @@ public final class NetherView extends JavaPlugin {
 		
 		portalHandler = new PortalHandler(this);
 		viewHandler = new ViewHandler(this, portalHandler);
+		viewUpdateScheduler = new ViewUpdateScheduler(this, viewHandler);
+		viewHandler.setViewUpdateScheduler(viewUpdateScheduler);
+		blockChangeQueue = new BlockChangeQueue(this, viewHandler);
 		
 		//do not register listeners or commands before creating handlers
 		registerListeners();
@@ -94,10 +110,16 @@ public final class NetherView extends JavaPlugin {
 	public void onDisable() {
 		
 		savePortalsToConfig();
+		viewUpdateScheduler.reset();
+		blockChangeQueue.reset();
 		viewHandler.reset();
 		portalHandler.reset();
 	}
 	
+	public boolean isLegacyServer() {
+		return isLegacyServer;
+	}
+	
 	public int getPortalProjectionDist() {
 		return portalProjectionDist;
 	}
@@ -106,10 +128,63 @@ public final class NetherView extends JavaPlugin {
 		return portalDisplayRangeSquared;
 	}
 	
+	/**
+	 * Returns the count of grid cells per block that player eye positions are snapped to before deciding if a portal view has to be recalculated.
+	 * 0 means every movement recalculates the view.
+	 */
+	public int getViewPointGridSize() {
+		return viewPointGridSize;
+	}
+	
+	/**
+	 * Returns the time in nanoseconds that portal view updates may take per tick before the remaining ones are postponed.
+	 */
+	public long getViewUpdateBudgetNanos() {
+		return viewUpdateBudgetNanos;
+	}
+	
+	/**
+	 * Returns the count of fake blocks that are sent to a player per tick at most. Views with more blocks are revealed over multiple ticks,
+	 * starting with the blocks closest to the portal and the center of the player's view. 0 means there is no limit.
+	 */
+	public int getMaxFakeBlocksPerTick() {
+		return maxFakeBlocksPerTick;
+	}
+	
+	/**
+	 * Returns the distance to a portal from which on the view into the projection gets shorter the further away a player is.
+	 * 0 means players always see the whole projection.
+	 */
+	public double getLodStartDistance() {
+		return lodStartDistance;
+	}
+	
+	/**
+	 * Returns the count of projection layers behind a portal after which non occluding blocks like flora are not displayed
+	 * to players further away than the LOD start distance. 0 means these blocks are always displayed.
+	 */
+	public int getLodDetailDepth() {
+		return lodDetailDepth;
+	}
+	
 	public boolean hidePortalBlocks() {
 		return hidePortalBlocks;
 	}
 	
+	/**
+	 * Returns true if projection caches should read blocks from the block caches of their counter portals instead of copying them.
+	 */
+	public boolean useVirtualProjections() {
+		return useVirtualProjections;
+	}
+	
+	/**
+	 * Returns true if fake blocks should be patched into chunks resent to players.
+	 */
+	public boolean rewritesChunkPackets() {
+		return rewriteChunkPackets;
+	}
+	
 	public boolean cancelTeleportWhenLinking() {
 		return cancelTeleportWhenLinking;
 	}
@@ -150,6 +225,9 @@ public final class NetherView extends JavaPlugin {
 				version.contains("1.11") ||
 				version.contains("1.12");
 		
+		//the chunk data format changes between most versions, only the one of 1.14 and 1.15 can be patched
+		supportsChunkPacketRewriting = version.contains("1.14") || version.contains("1.15");
+		
 		portalMaterial = isLegacyServer ? Material.matchMaterial("PORTAL") : Material.NETHER_PORTAL;
 	}
 	
@@ -169,8 +247,17 @@ public final class NetherView extends JavaPlugin {
 		
 		PluginManager manager = Bukkit.getPluginManager();
 		manager.registerEvents(new TeleportListener(this, portalHandler), this);
-		manager.registerEvents(new PlayerMoveListener(this, viewHandler), this);
-		manager.registerEvents(new BlockListener(this, portalHandler, viewHandler, portalMaterial), this);
+		manager.registerEvents(new PlayerMoveListener(this, viewHandler, viewUpdateScheduler), this);
+		manager.registerEvents(new BlockListener(this, portalHandler, viewHandler, blockChangeQueue, portalMaterial), this);
+		
+		if (supportsChunkPacketRewriting) {
+			try {
+				new ChunkPacketListener(this, viewHandler);
+			} catch (IllegalStateException e) {
+				getLogger().log(Level.WARNING, e.getMessage() + ". Chunk packets will not be rewritten.");
+				supportsChunkPacketRewriting = false;
+			}
+		}
 	}
 	
 	private void loadConfigData() {
@@ -182,7 +269,19 @@ public final class NetherView extends JavaPlugin {
 		
 		portalProjectionDist = getConfig().getInt("portal-projection-view-distance", 8);
 		portalDisplayRangeSquared = (int) Math.pow(getConfig().getInt("portal-display-range", 32), 2);
+		viewPointGridSize = Math.max(0, getConfig().getInt("view-point-grid-size", 8));
+		viewUpdateBudgetNanos = (long) (getConfig().getDouble("view-update-budget-millis", 5) * 1_000_000);
+		maxFakeBlocksPerTick = Math.max(0, getConfig().getInt("max-fake-blocks-per-tick", 2000));
+		lodStartDistance = Math.max(0, getConfig().getDouble("lod-start-distance", 0));
+		lodDetailDepth = Math.max(0, getConfig().getInt("lod-detail-depth", 0));
 		hidePortalBlocks = getConfig().getBoolean("hide-portal-blocks", true);
+		useVirtualProjections = getConfig().getBoolean("virtual-projections", false);
+		rewriteChunkPackets = getConfig().getBoolean("rewrite-chunk-packets", false);
+		
+		if (rewriteChunkPackets && !supportsChunkPacketRewriting) {
+			getLogger().log(Level.WARNING, "Chunk packets can only be rewritten on 1.14 and 1.15 servers. The option will be ignored.");
+			rewriteChunkPackets = false;
+		}
 		cancelTeleportWhenLinking = getConfig().getBoolean("cancel-teleport-when-linking-portals", true);
 		
 		setDebugMessagesEnabled(getConfig().getBoolean("debug-messages", false));
@@ -10,32 +10,36 @@ import org.bukkit.util.Vector;
 public class BlockCache {
 	
 	private Portal portal;
-	private BlockType[][][] blockCopies;
+	private BlockTypePalette palette;
+	private short[] blockIds;
 	private BlockVec min;
 	private BlockVec max;
+	private BlockVec size;
 	
 	private Vector facing;
 	private BlockType borderType;
 	
+	/**
+	 * Creates an empty block cache. The block types copied into it are stored as indices of the passed palette.
+	 */
 	public BlockCache(Portal portal,
 	                  BlockVec offset,
-	                  BlockType[][][] blockCopies,
+	                  BlockVec size,
 	                  Vector facing,
-	                  BlockType borderType) {
+	                  BlockType borderType,
+	                  BlockTypePalette palette) {
 		
 		this.portal = portal;
-		this.blockCopies = blockCopies;
+		this.palette = palette;
 		this.min = offset.clone();
-		this.max = offset.clone().add(sourceCacheSize());
+		this.max = offset.clone().add(size);
+		this.size = size.clone();
+		this.blockIds = new short[size.getX() * size.getY() * size.getZ()];
 		
 		this.facing = facing;
 		this.borderType = borderType;
 	}
 	
-	private BlockVec sourceCacheSize() {
-		return new BlockVec(blockCopies.length, blockCopies[0].length, blockCopies[0][0].length);
-	}
-	
 	public Portal getPortal() {
 		return portal;
 	}
@@ -52,10 +56,31 @@ public class BlockCache {
 		return max.clone();
 	}
 	
+	public Vector getFacing() {
+		return facing.clone();
+	}
+	
+	public BlockTypePalette getPalette() {
+		return palette;
+	}
+	
+	/**
+	 * Returns the approximate count of bytes the block data of this cache occupies in memory
+	 * (not including the shared palette).
+	 */
+	public long getByteSize() {
+		//16 bytes array header + 2 bytes per palette index
+		return 16 + 2L * blockIds.length;
+	}
+	
 	public boolean contains(BlockVec loc) {
-		return loc.getX() >= min.getX() && loc.getX() < max.getX() &&
-		       loc.getY() >= min.getY() && loc.getY() < max.getY() &&
-		       loc.getZ() >= min.getZ() && loc.getZ() < max.getZ();
+		return contains(loc.getX(), loc.getY(), loc.getZ());
+	}
+	
+	public boolean contains(int x, int y, int z) {
+		return x >= min.getX() && x < max.getX() &&
+		       y >= min.getY() && y < max.getY() &&
+		       z >= min.getZ() && z < max.getZ();
 	}
 	
 	/**
@@ -101,29 +126,42 @@ public class BlockCache {
 	}
 	
 	public BlockType getBlockTypeAt(BlockVec blockPos) {
+		return getBlockTypeAt(blockPos.getX(), blockPos.getY(), blockPos.getZ());
+	}
+	
+	public BlockType getBlockTypeAt(int x, int y, int z) {
 		
-		if (!contains(blockPos)) {
+		if (!contains(x, y, z)) {
 			return null;
 		}
 		
-		return blockCopies
-				[blockPos.getX() - min.getX()]
-				[blockPos.getY() - min.getY()]
-				[blockPos.getZ() - min.getZ()];
+		return palette.getBlockType(blockIds[getIndex(x, y, z)]);
+	}
+	
+	/**
+	 * Returns the palette index of the block type at the given position (0 if there is none).
+	 */
+	short getBlockIdAt(int x, int y, int z) {
+		return blockIds[getIndex(x, y, z)];
 	}
 	
 	public void setBlockTypeAt(BlockVec blockPos, BlockType blockType) {
-		blockCopies
-				[blockPos.getX() - min.getX()]
-				[blockPos.getY() - min.getY()]
-				[blockPos.getZ() - min.getZ()] = blockType;
+		setBlockTypeAt(blockPos.getX(), blockPos.getY(), blockPos.getZ(), blockType);
+	}
+	
+	public void setBlockTypeAt(int x, int y, int z, BlockType blockType) {
+		blockIds[getIndex(x, y, z)] = palette.getId(blockType);
 	}
 	
 	public void removeBlockDataAt(BlockVec blockPos) {
-		blockCopies
-				[blockPos.getX() - min.getX()]
-				[blockPos.getY() - min.getY()]
-				[blockPos.getZ() - min.getZ()] = null;
+		blockIds[getIndex(blockPos.getX(), blockPos.getY(), blockPos.getZ())] = 0;
+	}
+	
+	/**
+	 * Returns the index of a block position in the flat array of palette indices.
+	 */
+	private int getIndex(int x, int y, int z) {
+		return ((x - min.getX()) * size.getY() + (y - min.getY())) * size.getZ() + (z - min.getZ());
 	}
 	
 	/**
@@ -5,7 +5,6 @@ import me.gorgeousone.netherview.blocktype.BlockType;
 import me.gorgeousone.netherview.portal.Portal;
 import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
 import me.gorgeousone.netherview.threedstuff.BlockVec;
-import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockFace;
@@ -17,9 +16,62 @@ import java.util.Map;
 
 public class BlockCacheFactory {
 	
+	/**
+	 * Creates the two block caches in front of and behind a portal.
+	 *
+	 * @param blockSource provides the blocks to copy. If it is a SnapshotBlockSource this method can be called asynchronously.
+	 */
 	public static Map.Entry<BlockCache, BlockCache> createBlockCaches(Portal portal,
 	                                                                  int viewDist,
-	                                                                  BlockType cacheBorderBlockType) {
+	                                                                  BlockType cacheBorderBlockType,
+	                                                                  BlockTypePalette palette,
+	                                                                  BlockSource blockSource) {
+		
+		Vector portalFacing = portal.getPortalRect().getNormal();
+		Vector[] cacheCorners = getCacheCorners(portal, viewDist);
+		
+		BlockCache front = copyBlocksInBounds(
+				portal,
+				cacheCorners[0],
+				cacheCorners[1],
+				portalFacing,
+				cacheBorderBlockType,
+				palette,
+				blockSource);
+		
+		BlockCache back = copyBlocksInBounds(
+				portal,
+				cacheCorners[2],
+				cacheCorners[3],
+				portalFacing.clone().multiply(-1),
+				cacheBorderBlockType,
+				palette,
+				blockSource);
+		
+		return new AbstractMap.SimpleEntry<>(front, back);
+	}
+	
+	/**
+	 * Returns the minimum (inclusive) and maximum (exclusive) block position of the area covered by both block caches of a portal.
+	 */
+	public static Map.Entry<BlockVec, BlockVec> getCacheArea(Portal portal, int viewDist) {
+		
+		Vector[] cacheCorners = getCacheCorners(portal, viewDist);
+		Vector areaMin = cacheCorners[0];
+		Vector areaMax = cacheCorners[0];
+		
+		for (Vector corner : cacheCorners) {
+			areaMin = Vector.getMinimum(areaMin, corner);
+			areaMax = Vector.getMaximum(areaMax, corner);
+		}
+		
+		return new AbstractMap.SimpleEntry<>(new BlockVec(areaMin), new BlockVec(areaMax));
+	}
+	
+	/**
+	 * Returns two opposing corners of the front block cache followed by two corners of the back block cache.
+	 */
+	private static Vector[] getCacheCorners(Portal portal, int viewDist) {
 		
 		//theoretically the view distance needs to be increased by 1 for the extra layer of border around the cuboid of blocks.
 		//but somehow it's 2. Don't ask me.
@@ -42,30 +94,20 @@ public class BlockCacheFactory {
 		cacheCorner2.add(new Vector(0, verticalViewDist, 0));
 		cacheCorner2.add(widthFacing.clone().multiply(horizontalViewDist));
 		
-		//TODO pass parameters more efficient?
-		BlockCache front = copyBlocksInBounds(
-				portal,
+		return new Vector[]{
 				cacheCorner1.clone().add(portalFacing),
 				cacheCorner2.clone().add(portalFacing.clone().multiply(frontViewDist)),
-				portalFacing,
-				cacheBorderBlockType);
-		
-		BlockCache back = copyBlocksInBounds(
-				portal,
 				cacheCorner1.clone().subtract(portalFacing.clone().multiply(frontViewDist - 1)),
-				cacheCorner2,
-				portalFacing.clone().multiply(-1),
-				cacheBorderBlockType);
-		
-		return new AbstractMap.SimpleEntry<>(front, back);
+				cacheCorner2};
 	}
 	
-	//TODO rather copy the blocs into an empty BlockCache?
 	private static BlockCache copyBlocksInBounds(Portal portal,
 	                                             Vector cacheCorner1,
 	                                             Vector cacheCorner2,
 	                                             Vector cacheFacing,
-	                                             BlockType cacheBorderBlockType) {
+	                                             BlockType cacheBorderBlockType,
+	                                             BlockTypePalette palette,
+	                                             BlockSource blockSource) {
 		
 		Vector cacheMin = Vector.getMinimum(cacheCorner1, cacheCorner2);
 		Vector cacheMax = Vector.getMaximum(cacheCorner1, cacheCorner2);
@@ -81,32 +123,35 @@ public class BlockCacheFactory {
 			throw new IllegalArgumentException("Cannot create a BlockCache smaller than 1 block.");
 		}
 		
-		BlockType[][][] copiedBlocks = new BlockType[maxX - minX][maxY - minY][maxZ - minZ];
-		World cacheWorld = portal.getWorld();
+		BlockCache cache = new BlockCache(
+				portal,
+				new BlockVec(cacheMin),
+				new BlockVec(maxX - minX, maxY - minY, maxZ - minZ),
+				cacheFacing,
+				cacheBorderBlockType,
+				palette);
 		
 		for (int x = minX; x < maxX; x++) {
 			for (int y = minY; y < maxY; y++) {
 				for (int z = minZ; z < maxZ; z++) {
 					
-					Block block = new Location(cacheWorld, x, y, z).getBlock();
-					
-					if (!isVisible(block)) {
+					if (!blockSource.isVisible(x, y, z)) {
 						continue;
 					}
 					
-					BlockType blockType = BlockType.of(block);
+					BlockType blockType = blockSource.getBlockType(x, y, z);
 					
 					//make sure that the cache border onl consists of occluding blocks
 					if (!blockType.isOccluding() && isCacheBorder(x, y, z, minX, minY, minZ, maxX, maxY, maxZ, cacheFacing)) {
-						blockType = cacheBorderBlockType.clone();
+						blockType = cacheBorderBlockType;
 					}
 					
-					copiedBlocks[x - minX][y - minY][z - minZ] = blockType;
+					cache.setBlockTypeAt(x, y, z, blockType);
 				}
 			}
 		}
 		
-		return new BlockCache(portal, new BlockVec(cacheMin), copiedBlocks, cacheFacing, cacheBorderBlockType);
+		return cache;
 	}
 	
 	/**
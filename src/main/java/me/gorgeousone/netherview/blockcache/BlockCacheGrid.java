@@ -0,0 +1,189 @@
+package me.gorgeousone.netherview.blockcache;
+
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+
+import java.util.Arrays;
+
+/**
+ * An index of the block caches of one world by the chunks they overlap. Looking up the caches at a block position takes one
+ * hash lookup without any allocation, so block changes far away from portals can be discarded cheaply.
+ * Chunks are stored in an open addressing hash table with linear probing, keyed by the packed chunk coordinates.
+ */
+public class BlockCacheGrid {
+	
+	private static final int MIN_CAPACITY = 16;
+	
+	//the caches of a chunk are replaced by a new array when changed, so arrays handed out are never modified
+	private long[] chunkKeys;
+	private BlockCache[][] chunkCaches;
+	private int size;
+	
+	public BlockCacheGrid() {
+		
+		chunkKeys = new long[MIN_CAPACITY];
+		chunkCaches = new BlockCache[MIN_CAPACITY][];
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	public void add(BlockCache cache) {
+		
+		BlockVec min = cache.getMin();
+		BlockVec max = cache.getMax();
+		
+		for (int chunkX = min.getX() >> 4; chunkX <= (max.getX() - 1) >> 4; chunkX++) {
+			for (int chunkZ = min.getZ() >> 4; chunkZ <= (max.getZ() - 1) >> 4; chunkZ++) {
+				
+				long chunkKey = getChunkKey(chunkX, chunkZ);
+				BlockCache[] caches = get(chunkKey);
+				
+				if (caches == null) {
+					put(chunkKey, new BlockCache[] {cache});
+				} else {
+					BlockCache[] newCaches = Arrays.copyOf(caches, caches.length + 1);
+					newCaches[caches.length] = cache;
+					put(chunkKey, newCaches);
+				}
+			}
+		}
+	}
+	
+	public void remove(BlockCache cache) {
+		
+		BlockVec min = cache.getMin();
+		BlockVec max = cache.getMax();
+		
+		for (int chunkX = min.getX() >> 4; chunkX <= (max.getX() - 1) >> 4; chunkX++) {
+			for (int chunkZ = min.getZ() >> 4; chunkZ <= (max.getZ() - 1) >> 4; chunkZ++) {
+				
+				long chunkKey = getChunkKey(chunkX, chunkZ);
+				BlockCache[] caches = get(chunkKey);
+				
+				if (caches == null) {
+					continue;
+				}
+				
+				BlockCache[] newCaches = Arrays.stream(caches).filter(chunkCache -> chunkCache != cache).toArray(BlockCache[]::new);
+				
+				if (newCaches.length == 0) {
+					remove(chunkKey);
+				} else {
+					put(chunkKey, newCaches);
+				}
+			}
+		}
+	}
+	
+	public void clear() {
+		
+		Arrays.fill(chunkCaches, null);
+		size = 0;
+	}
+	
+	/**
+	 * Returns the block caches overlapping the chunk of the block position or null if there are none.
+	 * The returned array must not be modified.
+	 */
+	public BlockCache[] getCachesAt(int blockX, int blockZ) {
+		return get(getChunkKey(blockX >> 4, blockZ >> 4));
+	}
+	
+	private static long getChunkKey(int chunkX, int chunkZ) {
+		return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+	}
+	
+	private BlockCache[] get(long chunkKey) {
+		return chunkCaches[findSlot(chunkKeys, chunkCaches, chunkKey)];
+	}
+	
+	private void put(long chunkKey, BlockCache[] caches) {
+		
+		int slot = findSlot(chunkKeys, chunkCaches, chunkKey);
+		
+		if (chunkCaches[slot] == null) {
+			
+			if ((size + 1) * 2 > chunkKeys.length) {
+				grow();
+				slot = findSlot(chunkKeys, chunkCaches, chunkKey);
+			}
+			
+			chunkKeys[slot] = chunkKey;
+			size++;
+		}
+		
+		chunkCaches[slot] = caches;
+	}
+	
+	private void remove(long chunkKey) {
+		
+		int slot = findSlot(chunkKeys, chunkCaches, chunkKey);
+		
+		if (chunkCaches[slot] == null) {
+			return;
+		}
+		
+		chunkCaches[slot] = null;
+		size--;
+		
+		//move following entries of the probe sequence back into the gap, so no lookups are interrupted by it
+		int mask = chunkKeys.length - 1;
+		int gap = slot;
+		int next = (slot + 1) & mask;
+		
+		while (chunkCaches[next] != null) {
+			
+			int home = getHomeSlot(chunkKeys[next], mask);
+			
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				
+				chunkKeys[gap] = chunkKeys[next];
+				chunkCaches[gap] = chunkCaches[next];
+				chunkCaches[next] = null;
+				gap = next;
+			}
+			
+			next = (next + 1) & mask;
+		}
+	}
+	
+	private static int findSlot(long[] keys, BlockCache[][] values, long chunkKey) {
+		
+		int mask = keys.length - 1;
+		int slot = getHomeSlot(chunkKey, mask);
+		
+		while (values[slot] != null && keys[slot] != chunkKey) {
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private static int getHomeSlot(long chunkKey, int mask) {
+		
+		long hash = chunkKey * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ hash >>> 32) & mask;
+	}
+	
+	private void grow() {
+		
+		long[] oldKeys = chunkKeys;
+		BlockCache[][] oldCaches = chunkCaches;
+		
+		long[] newKeys = new long[oldKeys.length * 2];
+		BlockCache[][] newCaches = new BlockCache[oldKeys.length * 2][];
+		
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldCaches[i] != null) {
+				
+				int slot = findSlot(newKeys, newCaches, oldKeys[i]);
+				newKeys[slot] = oldKeys[i];
+				newCaches[slot] = oldCaches[i];
+			}
+		}
+		
+		chunkKeys = newKeys;
+		chunkCaches = newCaches;
+	}
+}
@@ -0,0 +1,16 @@
+package me.gorgeousone.netherview.blockcache;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+
+/**
+ * Provides the block types of a world and their visibility for copying them into block caches.
+ */
+public interface BlockSource {
+	
+	BlockType getBlockType(int x, int y, int z);
+	
+	/**
+	 * Returns true if any block touching the block at the given position is not occluding.
+	 */
+	boolean isVisible(int x, int y, int z);
+}
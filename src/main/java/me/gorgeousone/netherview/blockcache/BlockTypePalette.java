@@ -0,0 +1,77 @@
+package me.gorgeousone.netherview.blockcache;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * A register of all block types that were copied from one world. Block caches and projection caches only store the
+ * short index of a block type in the palette of their source world instead of a reference to a BlockType object.
+ * The index 0 is reserved for "no block" (null).
+ */
+public class BlockTypePalette {
+	
+	private static final int MAX_SIZE = Short.MAX_VALUE + 1;
+	
+	private final Map<BlockType, Short> blockTypeIds;
+	private volatile BlockType[] blockTypes;
+	private int size;
+	
+	public BlockTypePalette() {
+		
+		//block types are interned, so they can be looked up by identity
+		blockTypeIds = new IdentityHashMap<>();
+		blockTypes = new BlockType[64];
+		size = 1;
+	}
+	
+	/**
+	 * Returns the palette index of the passed block type. The block type will be added to the palette if it is not listed yet.
+	 */
+	public synchronized short getId(BlockType blockType) {
+		
+		if (blockType == null) {
+			return 0;
+		}
+		
+		Short id = blockTypeIds.get(blockType);
+		
+		if (id != null) {
+			return id;
+		}
+		
+		if (size == MAX_SIZE) {
+			throw new IllegalStateException("Cannot list more than " + (MAX_SIZE - 1) + " different block types in one palette.");
+		}
+		
+		BlockType[] types = blockTypes;
+		
+		if (size == types.length) {
+			types = Arrays.copyOf(types, Math.min(MAX_SIZE, types.length * 2));
+		}
+		
+		short newId = (short) size;
+		types[newId] = blockType;
+		blockTypeIds.put(blockType, newId);
+		
+		size++;
+		blockTypes = types;
+		return newId;
+	}
+	
+	/**
+	 * Returns the block type listed at the passed palette index or null for index 0.
+	 */
+	public BlockType getBlockType(short id) {
+		return blockTypes[id];
+	}
+	
+	/**
+	 * Returns the count of block types listed in this palette (including the empty index 0).
+	 */
+	public synchronized int size() {
+		return size;
+	}
+}
@@ -6,36 +6,82 @@ import me.gorgeousone.netherview.portal.Portal;
 import me.gorgeousone.netherview.threedstuff.BlockVec;
 import org.bukkit.World;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
-
 public class ProjectionCache {
 	
 	private Portal portal;
 	private Transform blockTransform;
 	
-	private BlockType[][][] blockCopies;
+	private BlockCache sourceCache;
+	private BlockTypePalette palette;
 	private BlockVec min;
 	private BlockVec max;
+	private BlockVec size;
 	
 	private int cacheLength;
 	
-	public ProjectionCache(Portal projectedPortal, BlockCache sourceCache, Transform blockTransform) {
+	//only increased on the main thread, but read by async view calculations
+	private volatile int version;
+	
+	//the rotated copy of the source cache and the translation from its coordinates to the coordinates of this projection
+	private RotatedBlockCache rotatedCache;
+	private BlockVec translation;
+	
+	//only used by virtual projections: the source position of the min corner and the source steps per x and z step in the projection
+	private boolean isVirtual;
+	private BlockVec sourceOrigin;
+	private BlockVec sourceStepX;
+	private BlockVec sourceStepZ;
+	
+	/**
+	 * Creates a virtual projection of the source cache. No blocks are copied, block types are looked up in the source cache
+	 * through the inverse transform instead.
+	 */
+	public static ProjectionCache virtual(Portal projectedPortal, BlockCache sourceCache, Transform blockTransform) {
+		return new ProjectionCache(projectedPortal, sourceCache, null, blockTransform);
+	}
+	
+	/**
+	 * Creates a projection that reads its blocks from a rotated copy of the source cache, which can be shared with other projections.
+	 * The rotation of the rotated cache has to match the rotation of the transform.
+	 */
+	public static ProjectionCache ofRotatedCache(Portal projectedPortal, RotatedBlockCache rotatedCache, Transform blockTransform) {
+		
+		if (rotatedCache.getQuarterTurns() != blockTransform.getQuarterTurns()) {
+			throw new IllegalArgumentException("The rotated cache is rotated by " + rotatedCache.getQuarterTurns()
+			                                   + " quarter turns but the transform by " + blockTransform.getQuarterTurns());
+		}
+		
+		return new ProjectionCache(projectedPortal, rotatedCache.getSourceCache(), rotatedCache, blockTransform);
+	}
+	
+	/**
+	 * @param rotatedCache the rotated copy of the source cache to read from or null for a virtual projection
+	 */
+	private ProjectionCache(Portal projectedPortal, BlockCache sourceCache, RotatedBlockCache rotatedCache, Transform blockTransform) {
 		
 		this.portal = projectedPortal;
+		this.sourceCache = sourceCache;
 		this.blockTransform = blockTransform;
+		this.palette = sourceCache.getPalette();
+		this.isVirtual = rotatedCache == null;
 		
-		createBlockCopies(sourceCache);
+		calculateBounds();
 		
-		if (portal.getAxis() == Axis.X) {
-			cacheLength = blockCopies[0][0].length;
+		if (isVirtual) {
+			createSourceLookup();
 		} else {
-			cacheLength = blockCopies.length;
+			useRotatedCache(rotatedCache);
 		}
 	}
 	
+	private void useRotatedCache(RotatedBlockCache rotatedCache) {
+		
+		this.rotatedCache = rotatedCache;
+		
+		//both the rotated cache and this projection are rotated the same way, so only a translation is left between them
+		this.translation = min.clone().subtract(rotatedCache.getMin());
+	}
+	
 	public Portal getPortal() {
 		return portal;
 	}
@@ -48,6 +94,30 @@ public class ProjectionCache {
 		return blockTransform;
 	}
 	
+	/**
+	 * Returns true if this projection does not hold a copy of the blocks but reads them from its source block cache.
+	 */
+	public boolean isVirtual() {
+		return isVirtual;
+	}
+	
+	/**
+	 * Returns the rotated copy of the source cache this projection reads from or null if the projection is virtual.
+	 */
+	public RotatedBlockCache getRotatedCache() {
+		return rotatedCache;
+	}
+	
+	/**
+	 * Stops using the rotated copy of the source cache, so it can be discarded if no other projection shares it.
+	 */
+	public void release() {
+		
+		if (rotatedCache != null) {
+			rotatedCache.release();
+		}
+	}
+	
 	public BlockVec getMin() {
 		return min.clone();
 	}
@@ -56,6 +126,14 @@ public class ProjectionCache {
 		return max.clone();
 	}
 	
+	/**
+	 * Returns the approximate count of bytes the block data of this cache occupies in memory
+	 * (not including the shared palette). Rotated copies shared with other projections are counted fully.
+	 */
+	public long getByteSize() {
+		return isVirtual ? 0 : rotatedCache.getByteSize();
+	}
+	
 	/**
 	 * Returns the length of the projection cache measured from portal to back wall.
 	 * The value is important for the length of viewing frustums.
@@ -64,110 +142,95 @@ public class ProjectionCache {
 		return cacheLength;
 	}
 	
+	/**
+	 * Returns a counter that increases every time a block of the projection is changed.
+	 */
+	public int getVersion() {
+		return version;
+	}
+	
 	public boolean contains(BlockVec loc) {
-		return loc.getX() >= min.getX() && loc.getX() < max.getX() &&
-		       loc.getY() >= min.getY() && loc.getY() < max.getY() &&
-		       loc.getZ() >= min.getZ() && loc.getZ() < max.getZ();
+		return contains(loc.getX(), loc.getY(), loc.getZ());
+	}
+	
+	public boolean contains(int x, int y, int z) {
+		return x >= min.getX() && x < max.getX() &&
+		       y >= min.getY() && y < max.getY() &&
+		       z >= min.getZ() && z < max.getZ();
 	}
 	
 	public BlockType getBlockTypeAt(BlockVec loc) {
+		return getBlockTypeAt(loc.getX(), loc.getY(), loc.getZ());
+	}
+	
+	public BlockType getBlockTypeAt(int x, int y, int z) {
 		
-		if (!contains(loc)) {
+		if (!contains(x, y, z)) {
 			return null;
 		}
 		
-		return blockCopies
-				[loc.getX() - min.getX()]
-				[loc.getY() - min.getY()]
-				[loc.getZ() - min.getZ()];
+		if (isVirtual) {
+			return getSourceBlockTypeAt(x, y, z);
+		}
+		
+		return rotatedCache.getBlockTypeAt(x - translation.getX(), y - translation.getY(), z - translation.getZ());
 	}
 	
+	/**
+	 * Changes the copied block type at a position. Virtual projections read the change from their source cache and only count up their version.
+	 */
 	public void setBlockTypeAt(BlockVec blockPos, BlockType newBlockData) {
 		
-		blockCopies
-				[blockPos.getX() - min.getX()]
-				[blockPos.getY() - min.getY()]
-				[blockPos.getZ() - min.getZ()] = newBlockData;
+		version++;
+		
+		if (!isVirtual) {
+			rotatedCache.setBlockTypeAt(
+					blockPos.getX() - translation.getX(),
+					blockPos.getY() - translation.getY(),
+					blockPos.getZ() - translation.getZ(),
+					newBlockData);
+		}
 	}
 	
-	public Map<BlockVec, BlockType> getBlockTypesAround(BlockVec blockCorner) {
+	private BlockType getSourceBlockTypeAt(int x, int y, int z) {
 		
-		Map<BlockVec, BlockType> blocksAroundCorner = new HashMap<>();
+		int dx = x - min.getX();
+		int dz = z - min.getZ();
 		
-		for (BlockVec blockPos : getAllCornerLocs(blockCorner)) {
-			
-			if (!contains(blockPos)) {
-				continue;
-			}
-			
-			BlockType blockType = getBlockTypeAt(blockPos);
-			
-			if (blockType != null) {
-				blocksAroundCorner.put(blockPos, blockType.clone());
-			}
+		int sourceX = sourceOrigin.getX() + dx * sourceStepX.getX() + dz * sourceStepZ.getX();
+		int sourceY = sourceOrigin.getY() + y - min.getY();
+		int sourceZ = sourceOrigin.getZ() + dx * sourceStepX.getZ() + dz * sourceStepZ.getZ();
+		
+		if (!sourceCache.contains(sourceX, sourceY, sourceZ)) {
+			return null;
 		}
 		
-		return blocksAroundCorner;
+		BlockType sourceType = palette.getBlockType(sourceCache.getBlockIdAt(sourceX, sourceY, sourceZ));
+		return sourceType == null ? null : sourceType.rotate(blockTransform.getQuarterTurns());
 	}
 	
-	private void createBlockCopies(BlockCache sourceCache) {
+	private void calculateBounds() {
 		
-		BlockVec sourceMin = sourceCache.getMin();
-		BlockVec sourceMax = sourceCache.getMax();
-		
-		BlockVec corner1 = blockTransform.transformVec(sourceMin.clone());
-		BlockVec corner2 = blockTransform.transformVec(sourceMax.clone());
+		BlockVec corner1 = blockTransform.transformVec(sourceCache.getMin());
+		BlockVec corner2 = blockTransform.transformVec(sourceCache.getMax());
 		
 		min = BlockVec.getMinimum(corner1, corner2);
 		max = BlockVec.getMaximum(corner1, corner2).add(1, 0, 1);
+		size = max.clone().subtract(min);
 		
-		int minX = min.getX();
-		int minY = min.getY();
-		int minZ = min.getZ();
-		
-		blockCopies = new BlockType
-				[max.getX() - minX]
-				[max.getY() - minY]
-				[max.getZ() - minZ];
-		
-		for (int x = sourceMin.getX(); x < sourceMax.getX(); x++) {
-			for (int y = sourceMin.getY(); y < sourceMax.getY(); y++) {
-				for (int z = sourceMin.getZ(); z < sourceMax.getZ(); z++) {
-					
-					BlockVec blockPos = new BlockVec(x, y, z);
-					BlockType blockType = sourceCache.getBlockTypeAt(blockPos);
-					
-					if (blockType == null) {
-						continue;
-					}
-					
-					BlockType rotatedBlockType = blockType.clone().rotate(blockTransform.getQuarterTurns());
-					BlockVec newBlockPos = blockTransform.transformVec(blockPos);
-					
-					blockCopies
-							[newBlockPos.getX() - minX]
-							[newBlockPos.getY() - minY]
-							[newBlockPos.getZ() - minZ] = rotatedBlockType;
-				}
-			}
+		if (portal.getAxis() == Axis.X) {
+			cacheLength = size.getZ();
+		} else {
+			cacheLength = size.getX();
 		}
 	}
 	
-	private Set<BlockVec> getAllCornerLocs(BlockVec blockCorner) {
-		
-		Set<BlockVec> locsAroundCorner = new HashSet<>();
+	private void createSourceLookup() {
 		
-		for (int dx = -1; dx <= 0; dx++) {
-			for (int dy = -1; dy <= 0; dy++) {
-				for (int dz = -1; dz <= 0; dz++) {
-					locsAroundCorner.add(new BlockVec(
-							blockCorner.getX() + dx,
-							blockCorner.getY() + dy,
-							blockCorner.getZ() + dz));
-				}
-			}
-		}
+		Transform inverseTransform = blockTransform.clone().invert();
 		
-		return locsAroundCorner;
+		sourceOrigin = inverseTransform.transformVec(min.clone());
+		sourceStepX = inverseTransform.transformVec(min.clone().add(1, 0, 0)).subtract(sourceOrigin);
+		sourceStepZ = inverseTransform.transformVec(min.clone().add(0, 0, 1)).subtract(sourceOrigin);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,222 @@
+package me.gorgeousone.netherview.blockcache;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A copy of a block cache that is rotated around the origin of the world. All projection caches of the same
+ * source cache with the same rotation can share one rotated copy and only differ in their translation.
+ */
+public class RotatedBlockCache {
+	
+	//minimum count of x-layers of the source cache that one fork join task copies
+	private static final int MIN_SLAB_WIDTH = 4;
+	
+	private BlockCache sourceCache;
+	private int quarterTurns;
+	private Transform rotation;
+	
+	private BlockTypePalette palette;
+	private short[] blockIds;
+	private BlockVec min;
+	private BlockVec max;
+	private BlockVec size;
+	
+	//the reference count is only changed while the registry is locked
+	private RotatedCacheRegistry registry;
+	private int referenceCount;
+	
+	/**
+	 * Copies and rotates the blocks of the source cache. The block copying is split into slabs along the x-axis of the
+	 * source cache which are run in parallel on the passed pool. Rotated caches are only created by their registry.
+	 */
+	RotatedBlockCache(BlockCache sourceCache, int quarterTurns, ForkJoinPool copyPool, RotatedCacheRegistry registry) {
+		
+		this.sourceCache = sourceCache;
+		this.registry = registry;
+		this.quarterTurns = Math.floorMod(quarterTurns, 4);
+		this.palette = sourceCache.getPalette();
+		this.rotation = createRotation(this.quarterTurns);
+		
+		BlockVec corner1 = rotation.transformVec(sourceCache.getMin());
+		BlockVec corner2 = rotation.transformVec(sourceCache.getMax());
+		
+		min = BlockVec.getMinimum(corner1, corner2);
+		max = BlockVec.getMaximum(corner1, corner2).add(1, 0, 1);
+		size = max.clone().subtract(min);
+		
+		createBlockCopies(copyPool);
+	}
+	
+	public BlockCache getSourceCache() {
+		return sourceCache;
+	}
+	
+	public int getQuarterTurns() {
+		return quarterTurns;
+	}
+	
+	public BlockVec getMin() {
+		return min.clone();
+	}
+	
+	public BlockVec getMax() {
+		return max.clone();
+	}
+	
+	/**
+	 * Returns the approximate count of bytes the block data of this cache occupies in memory
+	 * (not including the shared palette).
+	 */
+	public long getByteSize() {
+		//16 bytes array header + 2 bytes per palette index
+		return 16 + 2L * blockIds.length;
+	}
+	
+	public boolean contains(int x, int y, int z) {
+		return x >= min.getX() && x < max.getX() &&
+		       y >= min.getY() && y < max.getY() &&
+		       z >= min.getZ() && z < max.getZ();
+	}
+	
+	public BlockType getBlockTypeAt(int x, int y, int z) {
+		
+		if (!contains(x, y, z)) {
+			return null;
+		}
+		
+		return palette.getBlockType(blockIds[getIndex(x, y, z)]);
+	}
+	
+	public void setBlockTypeAt(int x, int y, int z, BlockType blockType) {
+		blockIds[getIndex(x, y, z)] = palette.getId(blockType);
+	}
+	
+	/**
+	 * Counts one more projection cache using this rotated copy.
+	 */
+	void addReference() {
+		referenceCount++;
+	}
+	
+	/**
+	 * Counts one projection cache less using this rotated copy. If none is left, it is removed from its registry.
+	 */
+	public void release() {
+		registry.release(this);
+	}
+	
+	int removeReference() {
+		return --referenceCount;
+	}
+	
+	private static Transform createRotation(int quarterTurns) {
+		
+		Transform rotation = new Transform();
+		
+		if (quarterTurns == 1) {
+			rotation.setRotY90DegRight();
+		} else if (quarterTurns == 2) {
+			rotation.setRotY180Deg();
+		} else if (quarterTurns == 3) {
+			rotation.setRotY90DegLeft();
+		}
+		
+		return rotation;
+	}
+	
+	private void createBlockCopies(ForkJoinPool copyPool) {
+		
+		BlockVec sourceMin = sourceCache.getMin();
+		BlockVec sourceMax = sourceCache.getMax();
+		
+		blockIds = new short[size.getX() * size.getY() * size.getZ()];
+		
+		//the rotated palette indices are looked up before copying, so the parallel tasks only read from the palette
+		short[] rotatedIds = new short[palette.size()];
+		
+		for (short sourceId = 1; sourceId < rotatedIds.length; sourceId++) {
+			rotatedIds[sourceId] = palette.getId(palette.getBlockType(sourceId).rotate(quarterTurns));
+		}
+		
+		//the rotation is linear, so the target index can be calculated from the index of the min corner plus a step per axis
+		int originIndex = getTargetIndex(sourceMin.getX(), sourceMin.getY(), sourceMin.getZ());
+		int[] indexSteps = {
+				getTargetIndex(sourceMin.getX() + 1, sourceMin.getY(), sourceMin.getZ()) - originIndex,
+				getTargetIndex(sourceMin.getX(), sourceMin.getY() + 1, sourceMin.getZ()) - originIndex,
+				getTargetIndex(sourceMin.getX(), sourceMin.getY(), sourceMin.getZ() + 1) - originIndex};
+		
+		//each x-layer of the source cache is rotated onto a different layer of the copy, so slabs never write to the same indices
+		copyPool.invoke(new SlabCopyTask(rotatedIds, originIndex, indexSteps, sourceMin.getX(), sourceMax.getX()));
+	}
+	
+	private int getTargetIndex(int sourceX, int sourceY, int sourceZ) {
+		
+		BlockVec targetPos = rotation.transformVec(new BlockVec(sourceX, sourceY, sourceZ));
+		return getIndex(targetPos.getX(), targetPos.getY(), targetPos.getZ());
+	}
+	
+	/**
+	 * Returns the index of a block position in the flat array of palette indices.
+	 */
+	private int getIndex(int x, int y, int z) {
+		return ((x - min.getX()) * size.getY() + (y - min.getY())) * size.getZ() + (z - min.getZ());
+	}
+	
+	/**
+	 * Copies the blocks of the source cache between two x coordinates into the rotated copy, splitting itself into halves
+	 * as long as the slab is wide enough.
+	 */
+	private class SlabCopyTask extends RecursiveAction {
+		
+		private final short[] rotatedIds;
+		private final int originIndex;
+		private final int[] indexSteps;
+		private final int slabMinX;
+		private final int slabMaxX;
+		
+		SlabCopyTask(short[] rotatedIds, int originIndex, int[] indexSteps, int slabMinX, int slabMaxX) {
+			
+			this.rotatedIds = rotatedIds;
+			this.originIndex = originIndex;
+			this.indexSteps = indexSteps;
+			this.slabMinX = slabMinX;
+			this.slabMaxX = slabMaxX;
+		}
+		
+		@Override
+		protected void compute() {
+			
+			if (slabMaxX - slabMinX >= 2 * MIN_SLAB_WIDTH) {
+				
+				int slabMidX = (slabMinX + slabMaxX) / 2;
+				invokeAll(
+						new SlabCopyTask(rotatedIds, originIndex, indexSteps, slabMinX, slabMidX),
+						new SlabCopyTask(rotatedIds, originIndex, indexSteps, slabMidX, slabMaxX));
+				return;
+			}
+			
+			BlockVec sourceMin = sourceCache.getMin();
+			BlockVec sourceMax = sourceCache.getMax();
+			
+			for (int x = slabMinX; x < slabMaxX; x++) {
+				for (int y = sourceMin.getY(); y < sourceMax.getY(); y++) {
+					
+					int rowIndex = originIndex + (x - sourceMin.getX()) * indexSteps[0] + (y - sourceMin.getY()) * indexSteps[1];
+					
+					for (int z = sourceMin.getZ(); z < sourceMax.getZ(); z++) {
+						
+						short sourceId = sourceCache.getBlockIdAt(x, y, z);
+						
+						if (sourceId != 0) {
+							blockIds[rowIndex + (z - sourceMin.getZ()) * indexSteps[2]] = rotatedIds[sourceId];
+						}
+					}
+				}
+			}
+		}
+	}
+}
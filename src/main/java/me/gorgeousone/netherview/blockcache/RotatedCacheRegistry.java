@@ -0,0 +1,88 @@
+package me.gorgeousone.netherview.blockcache;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Keeps track of the rotated block caches that are shared between projection caches. A rotated copy is created
+ * for the first projection of a source cache with a certain rotation and forgotten when the last one is released.
+ */
+public class RotatedCacheRegistry {
+	
+	private final Map<BlockCache, RotatedBlockCache[]> rotatedCaches;
+	private final ForkJoinPool copyPool;
+	
+	public RotatedCacheRegistry() {
+		this(ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * @param copyPool the pool the blocks of new rotated copies are copied on in parallel
+	 */
+	public RotatedCacheRegistry(ForkJoinPool copyPool) {
+		this.rotatedCaches = new HashMap<>();
+		this.copyPool = copyPool;
+	}
+	
+	/**
+	 * Returns the rotated copy of the source cache and counts one more reference to it. The copy is created if it does not exist yet.
+	 */
+	public synchronized RotatedBlockCache acquire(BlockCache sourceCache, int quarterTurns) {
+		
+		int turns = Math.floorMod(quarterTurns, 4);
+		RotatedBlockCache[] rotations = rotatedCaches.computeIfAbsent(sourceCache, cache -> new RotatedBlockCache[4]);
+		
+		if (rotations[turns] == null) {
+			rotations[turns] = new RotatedBlockCache(sourceCache, turns, copyPool, this);
+		}
+		
+		rotations[turns].addReference();
+		return rotations[turns];
+	}
+	
+	synchronized void release(RotatedBlockCache rotatedCache) {
+		
+		if (rotatedCache.removeReference() > 0) {
+			return;
+		}
+		
+		RotatedBlockCache[] rotations = rotatedCaches.get(rotatedCache.getSourceCache());
+		
+		if (rotations == null || rotations[rotatedCache.getQuarterTurns()] != rotatedCache) {
+			return;
+		}
+		
+		rotations[rotatedCache.getQuarterTurns()] = null;
+		
+		for (RotatedBlockCache rotation : rotations) {
+			if (rotation != null) {
+				return;
+			}
+		}
+		
+		rotatedCaches.remove(rotatedCache.getSourceCache());
+	}
+	
+	/**
+	 * Returns the count of rotated copies currently shared by projection caches.
+	 */
+	public synchronized int size() {
+		
+		int count = 0;
+		
+		for (RotatedBlockCache[] rotations : rotatedCaches.values()) {
+			for (RotatedBlockCache rotation : rotations) {
+				if (rotation != null) {
+					count++;
+				}
+			}
+		}
+		
+		return count;
+	}
+	
+	public synchronized void clear() {
+		rotatedCaches.clear();
+	}
+}
@@ -0,0 +1,120 @@
+package me.gorgeousone.netherview.blockcache;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import org.bukkit.ChunkSnapshot;
+import org.bukkit.Material;
+import org.bukkit.World;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Reads blocks from chunk snapshots that were taken on the main thread, so block caches can be created asynchronously.
+ * Not available for legacy servers.
+ */
+public class SnapshotBlockSource implements BlockSource {
+	
+	private Map<Long, ChunkSnapshot> snapshots;
+	private BlockVec min;
+	private BlockVec size;
+	private int maxHeight;
+	
+	private boolean[] occludingBlocks;
+	
+	private SnapshotBlockSource(Map<Long, ChunkSnapshot> snapshots, BlockVec min, BlockVec max, int maxHeight) {
+		
+		this.snapshots = snapshots;
+		this.min = min;
+		this.size = max.clone().subtract(min);
+		this.maxHeight = maxHeight;
+	}
+	
+	/**
+	 * Takes snapshots of all chunks intersecting the area between min and max (max exclusive) and the blocks
+	 * bordering it. Has to be called on the main thread.
+	 */
+	public static SnapshotBlockSource capture(World world, BlockVec min, BlockVec max) {
+		
+		BlockVec areaMin = min.clone().add(-1, -1, -1);
+		BlockVec areaMax = max.clone().add(1, 1, 1);
+		
+		Map<Long, ChunkSnapshot> snapshots = new HashMap<>();
+		
+		for (int chunkX = areaMin.getX() >> 4; chunkX <= (areaMax.getX() - 1) >> 4; chunkX++) {
+			for (int chunkZ = areaMin.getZ() >> 4; chunkZ <= (areaMax.getZ() - 1) >> 4; chunkZ++) {
+				snapshots.put(getChunkKey(chunkX, chunkZ), world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(false, false, false));
+			}
+		}
+		
+		return new SnapshotBlockSource(snapshots, areaMin, areaMax, world.getMaxHeight());
+	}
+	
+	@Override
+	public BlockType getBlockType(int x, int y, int z) {
+		
+		if (y < 0 || y >= maxHeight) {
+			return BlockType.of(Material.AIR);
+		}
+		
+		return BlockType.of(getSnapshot(x, z).getBlockData(x & 15, y, z & 15));
+	}
+	
+	@Override
+	public boolean isVisible(int x, int y, int z) {
+		
+		if (occludingBlocks == null) {
+			loadOcclusion();
+		}
+		
+		return !isOccluding(x + 1, y, z) ||
+		       !isOccluding(x - 1, y, z) ||
+		       !isOccluding(x, y + 1, z) ||
+		       !isOccluding(x, y - 1, z) ||
+		       !isOccluding(x, y, z + 1) ||
+		       !isOccluding(x, y, z - 1);
+	}
+	
+	/**
+	 * Reads whether the blocks in the captured area are occluding, all at once, so visibility checks only need to
+	 * look up the array instead of the snapshots.
+	 */
+	private void loadOcclusion() {
+		
+		occludingBlocks = new boolean[size.getX() * size.getY() * size.getZ()];
+		
+		int minX = min.getX();
+		int minY = Math.max(0, min.getY());
+		int minZ = min.getZ();
+		int maxX = minX + size.getX();
+		int maxY = Math.min(maxHeight, min.getY() + size.getY());
+		int maxZ = minZ + size.getZ();
+		
+		for (int x = minX; x < maxX; x++) {
+			for (int z = minZ; z < maxZ; z++) {
+				
+				ChunkSnapshot snapshot = getSnapshot(x, z);
+				
+				for (int y = minY; y < maxY; y++) {
+					occludingBlocks[getIndex(x, y, z)] = snapshot.getBlockType(x & 15, y, z & 15).isOccluding();
+				}
+			}
+		}
+	}
+	
+	private boolean isOccluding(int x, int y, int z) {
+		return occludingBlocks[getIndex(x, y, z)];
+	}
+	
+	private int getIndex(int x, int y, int z) {
+		return ((x - min.getX()) * size.getY() + (y - min.getY())) * size.getZ() + (z - min.getZ());
+	}
+	
+	private ChunkSnapshot getSnapshot(int x, int z) {
+		return snapshots.get(getChunkKey(x >> 4, z >> 4));
+	}
+	
+	private static long getChunkKey(int chunkX, int chunkZ) {
+		return (long) chunkX << 32 | chunkZ & 0xFFFFFFFFL;
+	}
+}
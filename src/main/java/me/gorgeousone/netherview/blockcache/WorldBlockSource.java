@@ -0,0 +1,26 @@
+package me.gorgeousone.netherview.blockcache;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import org.bukkit.World;
+
+/**
+ * Reads blocks directly from a loaded world. Can only be used on the main thread.
+ */
+public class WorldBlockSource implements BlockSource {
+	
+	private World world;
+	
+	public WorldBlockSource(World world) {
+		this.world = world;
+	}
+	
+	@Override
+	public BlockType getBlockType(int x, int y, int z) {
+		return BlockType.of(world.getBlockAt(x, y, z));
+	}
+	
+	@Override
+	public boolean isVisible(int x, int y, int z) {
+		return BlockCacheFactory.isVisible(world.getBlockAt(x, y, z));
+	}
+}
@@ -24,64 +24,64 @@ import java.util.Set;
 
 public class AquaticBlockType extends BlockType {
 	
-	private BlockData blockData;
+	private final BlockData blockData;
 	
-	public AquaticBlockType(Material material) {
+	AquaticBlockType(Material material) {
 		blockData = material.createBlockData();
 	}
 	
-	public AquaticBlockType(Block block) {
+	AquaticBlockType(Block block) {
 		blockData = block.getBlockData().clone();
 	}
 	
-	public AquaticBlockType(BlockState state) {
+	AquaticBlockType(BlockState state) {
 		blockData = state.getBlockData().clone();
 	}
 	
-	public AquaticBlockType(BlockData data) {
+	AquaticBlockType(BlockData data) {
 		blockData = data.clone();
 	}
 	
-	public AquaticBlockType(String serialized) {
+	AquaticBlockType(String serialized) {
 		blockData = Material.valueOf(serialized.toUpperCase()).createBlockData();
 	}
 	
 	@Override
-	public BlockType rotate(int quarterTurns) {
+	protected BlockType createRotatedCopy(int quarterTurns) {
 		
-		if (quarterTurns == 0) {
-			return this;
-		}
+		//the constructor copies the block data, so this block type stays untouched
+		AquaticBlockType rotatedType = new AquaticBlockType(blockData);
+		BlockData rotatedData = rotatedType.blockData;
 		
 		//e.g. logs
-		if (blockData instanceof Orientable) {
+		if (rotatedData instanceof Orientable) {
 			
 			if (quarterTurns % 2 == 0) {
-				return this;
+				return rotatedType;
 			}
 			
-			Orientable orientable = (Orientable) blockData;
+			Orientable orientable = (Orientable) rotatedData;
 			
 			if (orientable.getAxis() != Axis.Y) {
 				orientable.setAxis(orientable.getAxis() == Axis.X ? Axis.Z : Axis.X);
 			}
 			
 			//e.g. furnaces, hoppers
-		} else if (blockData instanceof Directional) {
+		} else if (rotatedData instanceof Directional) {
 			
-			Directional directional = (Directional) blockData;
+			Directional directional = (Directional) rotatedData;
 			directional.setFacing(RotationUtils.getRotatedFace(directional.getFacing(), quarterTurns));
 			
 			//e.g. signs
-		} else if (blockData instanceof Rotatable) {
+		} else if (rotatedData instanceof Rotatable) {
 			
-			Rotatable rotatable = (Rotatable) blockData;
+			Rotatable rotatable = (Rotatable) rotatedData;
 			rotatable.setRotation(RotationUtils.getRotatedFace(rotatable.getRotation(), quarterTurns));
 			
 			//e.g. fences
-		} else if (blockData instanceof MultipleFacing) {
+		} else if (rotatedData instanceof MultipleFacing) {
 			
-			MultipleFacing multiFacing = (MultipleFacing) blockData;
+			MultipleFacing multiFacing = (MultipleFacing) rotatedData;
 			Set<BlockFace> facings = new HashSet<>(multiFacing.getFaces());
 			
 			for (BlockFace face : multiFacing.getAllowedFaces()) {
@@ -92,9 +92,9 @@ public class AquaticBlockType extends BlockType {
 				multiFacing.setFace(RotationUtils.getRotatedFace(face, quarterTurns), true);
 			}
 			
-		} else if (blockData instanceof RedstoneWire) {
+		} else if (rotatedData instanceof RedstoneWire) {
 			
-			RedstoneWire wire = (RedstoneWire) blockData;
+			RedstoneWire wire = (RedstoneWire) rotatedData;
 			Map<BlockFace, RedstoneWire.Connection> connections = new HashMap<>();
 			
 			for (BlockFace face : wire.getAllowedFaces()) {
@@ -104,17 +104,17 @@ public class AquaticBlockType extends BlockType {
 			for (BlockFace face : connections.keySet())
 				wire.setFace(RotationUtils.getRotatedFace(face, quarterTurns), connections.get(face));
 			
-		} else if (blockData instanceof Rail) {
+		} else if (rotatedData instanceof Rail) {
 			
-			Rail rail = (Rail) blockData;
+			Rail rail = (Rail) rotatedData;
 			rail.setShape(AquaticRailUtils.getRotatedRail(rail.getShape(), quarterTurns));
 		}
 		
-		return this;
+		return rotatedType;
 	}
 	
 	@Override
-	public WrappedBlockData getWrapped() {
+	protected WrappedBlockData createWrapped() {
 		return WrappedBlockData.createData(blockData);
 	}
 	
@@ -124,13 +124,15 @@ public class AquaticBlockType extends BlockType {
 	}
 	
 	@Override
-	public int hashCode() {
-		return Objects.hash(blockData);
+	public boolean isAir() {
+		
+		Material material = blockData.getMaterial();
+		return material == Material.AIR || material == Material.CAVE_AIR || material == Material.VOID_AIR;
 	}
 	
 	@Override
-	public AquaticBlockType clone() {
-		return new AquaticBlockType(blockData);
+	public int hashCode() {
+		return Objects.hash(blockData);
 	}
 	
 	@Override
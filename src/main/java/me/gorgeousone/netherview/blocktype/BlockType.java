@@ -4,10 +4,33 @@ import com.comphenix.protocol.wrappers.WrappedBlockData;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
 
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable representation of a block state. All instances are interned, so identical block states share one
+ * BlockType object and can be compared by reference.
+ */
 public abstract class BlockType {
 	
 	private static boolean isLegacyServer;
+	private final static Map<BlockType, BlockType> INTERNED_TYPES = new ConcurrentHashMap<>();
+	
+	//all interned block types listed at their id. The id 0 is not used, so it can stand for "no block type"
+	private static volatile BlockType[] typesById = new BlockType[256];
+	private static int nextId = 1;
+	
+	private int id;
+	
+	//lazily filled with the interned block types for 0 to 3 quarter turns
+	private volatile BlockType[] rotations;
+	
+	//lazily created block data of the server for sending the block type in packets. It is published by the volatile flag
+	private WrappedBlockData wrapped;
+	private volatile boolean isWrapped;
 	
 	/**
 	 * Sets whether BlockType.of() will create a LegacyBlockType or an AquaticBlockType
@@ -17,31 +40,136 @@ public abstract class BlockType {
 	}
 	
 	public static BlockType of(Block block) {
-		return isLegacyServer ? new LegacyBlockType(block) : new AquaticBlockType(block);
+		return intern(isLegacyServer ? new LegacyBlockType(block) : new AquaticBlockType(block));
 	}
 	
 	public static BlockType of(Material material) {
-		return isLegacyServer ? new LegacyBlockType(material) : new AquaticBlockType(material);
+		return intern(isLegacyServer ? new LegacyBlockType(material) : new AquaticBlockType(material));
 	}
 	
 	public static BlockType of(BlockState state) {
-		return isLegacyServer ? new LegacyBlockType(state) : new AquaticBlockType(state);
+		return intern(isLegacyServer ? new LegacyBlockType(state) : new AquaticBlockType(state));
 	}
 	
 	public static BlockType of(String serialized) {
-		return isLegacyServer ? new LegacyBlockType(serialized) : new AquaticBlockType(serialized);
+		return intern(isLegacyServer ? new LegacyBlockType(serialized) : new AquaticBlockType(serialized));
+	}
+	
+	/**
+	 * Creates a BlockType from block data, which only exists for 1.13 servers and later.
+	 */
+	public static BlockType of(BlockData data) {
+		return intern(new AquaticBlockType(data));
+	}
+	
+	/**
+	 * Returns the count of distinct block types that have been created so far.
+	 */
+	public static int getInternedCount() {
+		return INTERNED_TYPES.size();
+	}
+	
+	/**
+	 * Returns the interned block type with the passed id or null if there is none.
+	 */
+	public static BlockType byId(int id) {
+		
+		BlockType[] types = typesById;
+		return id > 0 && id < types.length ? types[id] : null;
+	}
+	
+	/**
+	 * Returns the canonical instance of a block type equal to the passed one.
+	 */
+	protected static BlockType intern(BlockType blockType) {
+		return INTERNED_TYPES.computeIfAbsent(blockType, BlockType::register);
+	}
+	
+	private static synchronized BlockType register(BlockType blockType) {
+		
+		BlockType[] types = typesById;
+		
+		if (nextId == types.length) {
+			types = Arrays.copyOf(types, types.length * 2);
+		}
+		
+		blockType.id = nextId;
+		types[nextId] = blockType;
+		nextId++;
+		
+		typesById = types;
+		return blockType;
+	}
+	
+	/**
+	 * Returns the server wide unique id of this (interned) block type, which is always greater than 0.
+	 */
+	public int getId() {
+		return id;
 	}
 	
 	/**
-	 * Rotates the BlockType if it is rotatable in the xz plane in any way
+	 * Returns the block type rotated in the xz plane (if it is rotatable in any way). Rotations are only calculated
+	 * once per block type, after that this is a simple look up.
 	 *
 	 * @param quarterTurns count of 90° turns performed (between 0 and 3)
 	 */
-	public abstract BlockType rotate(int quarterTurns);
+	public BlockType rotate(int quarterTurns) {
+		
+		int turns = Math.floorMod(quarterTurns, 4);
+		
+		if (turns == 0) {
+			return this;
+		}
+		
+		BlockType[] cachedRotations = rotations;
+		
+		if (cachedRotations != null && cachedRotations[turns] != null) {
+			return cachedRotations[turns];
+		}
+		
+		return cacheRotation(turns);
+	}
+	
+	private synchronized BlockType cacheRotation(int quarterTurns) {
+		
+		BlockType[] cachedRotations = rotations == null ? new BlockType[4] : rotations.clone();
+		
+		if (cachedRotations[quarterTurns] == null) {
+			cachedRotations[quarterTurns] = intern(createRotatedCopy(quarterTurns));
+		}
+		
+		rotations = cachedRotations;
+		return cachedRotations[quarterTurns];
+	}
+	
+	/**
+	 * Creates a new (not yet interned) block type that is rotated by the given quarter turns.
+	 *
+	 * @param quarterTurns count of 90° turns performed (between 1 and 3)
+	 */
+	protected abstract BlockType createRotatedCopy(int quarterTurns);
+	
+	/**
+	 * Returns the block type as block data of the server for packets. The conversion only happens once per block type,
+	 * after that the same object is returned, so it must not be modified. A conversion resulting in null is not repeated either.
+	 */
+	public WrappedBlockData getWrapped() {
+		
+		if (!isWrapped) {
+			wrapped = createWrapped();
+			isWrapped = true;
+		}
+		
+		return wrapped;
+	}
 	
-	public abstract WrappedBlockData getWrapped();
+	/**
+	 * Converts the block type to block data of the server, which is expensive because of the reflection involved.
+	 */
+	protected abstract WrappedBlockData createWrapped();
 	
 	public abstract boolean isOccluding();
 	
-	public abstract BlockType clone();
+	public abstract boolean isAir();
 }
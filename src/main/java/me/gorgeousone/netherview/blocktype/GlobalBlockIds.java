@@ -0,0 +1,67 @@
+package me.gorgeousone.netherview.blocktype;
+
+import com.comphenix.protocol.utility.MinecraftReflection;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+
+/**
+ * Looks up the ids the client uses for block states in chunk data (the global palette) through the server's Block class.
+ * Ids are cached at the id of the interned block type, so each block type is only looked up with reflection once.
+ */
+public class GlobalBlockIds {
+	
+	private final Method getCombinedId;
+	
+	//global ids are stored incremented by one, so 0 means that the block type was not looked up yet
+	private volatile int[] idsByType;
+	
+	public GlobalBlockIds() {
+		
+		try {
+			getCombinedId = MinecraftReflection.getBlockClass().getMethod("getCombinedId", MinecraftReflection.getIBlockDataClass());
+		} catch (NoSuchMethodException e) {
+			throw new IllegalStateException("Could not find the global block ids of this server version", e);
+		}
+		
+		idsByType = new int[256];
+	}
+	
+	/**
+	 * Returns the global id of the block type or -1 if it could not be found.
+	 */
+	public int getGlobalId(BlockType blockType) {
+		
+		int[] ids = idsByType;
+		int typeId = blockType.getId();
+		
+		if (typeId < ids.length && ids[typeId] != 0) {
+			return ids[typeId] - 1;
+		}
+		
+		return loadGlobalId(blockType);
+	}
+	
+	private synchronized int loadGlobalId(BlockType blockType) {
+		
+		int globalId;
+		
+		try {
+			globalId = (int) getCombinedId.invoke(null, blockType.getWrapped().getHandle());
+		} catch (IllegalAccessException | InvocationTargetException | ClassCastException e) {
+			return -1;
+		}
+		
+		int[] ids = idsByType;
+		int typeId = blockType.getId();
+		
+		if (typeId >= ids.length) {
+			ids = Arrays.copyOf(ids, Math.max(typeId + 1, ids.length * 2));
+		}
+		
+		ids[typeId] = globalId + 1;
+		idsByType = ids;
+		return globalId;
+	}
+}
@@ -20,25 +20,25 @@ import java.util.Set;
 @SuppressWarnings("deprecation")
 public class LegacyBlockType extends BlockType {
 	
-	private MaterialData materialData;
+	private final MaterialData materialData;
 	
-	public LegacyBlockType(Material material) {
+	LegacyBlockType(Material material) {
 		materialData = new MaterialData(material);
 	}
 	
-	public LegacyBlockType(Block block) {
+	LegacyBlockType(Block block) {
 		materialData = block.getState().getData().clone();
 	}
 	
-	public LegacyBlockType(BlockState state) {
+	LegacyBlockType(BlockState state) {
 		materialData = state.getData().clone();
 	}
 	
-	public LegacyBlockType(MaterialData data) {
+	LegacyBlockType(MaterialData data) {
 		materialData = data.clone();
 	}
 	
-	public LegacyBlockType(String serialized) {
+	LegacyBlockType(String serialized) {
 		
 		Material material;
 		byte data = 0;
@@ -58,33 +58,33 @@ public class LegacyBlockType extends BlockType {
 	}
 	
 	@Override
-	public BlockType rotate(int quarterTurns) {
+	protected BlockType createRotatedCopy(int quarterTurns) {
 		
-		if (quarterTurns == 0) {
-			return this;
-		}
+		//the constructor copies the material data, so this block type stays untouched
+		LegacyBlockType rotatedType = new LegacyBlockType(materialData);
+		MaterialData rotatedData = rotatedType.materialData;
 		
-		if (materialData instanceof Directional) {
+		if (rotatedData instanceof Directional) {
 			
-			Directional directional = (Directional) materialData;
+			Directional directional = (Directional) rotatedData;
 			BlockFace facing = directional.getFacing();
 			
 			//DON'T ASK ME WHY BUT IT IZZ HOW IT IZZ
-			if (materialData.getItemType().name().contains("STAIRS")) {
+			if (rotatedData.getItemType().name().contains("STAIRS")) {
 				facing = facing.getOppositeFace();
 			}
 			
 			directional.setFacingDirection(RotationUtils.getRotatedFace(facing, quarterTurns));
 			
-		} else if (materialData instanceof Rails) {
+		} else if (rotatedData instanceof Rails) {
 			
-			Rails rails = (Rails) materialData;
+			Rails rails = (Rails) rotatedData;
 			BlockFace facing = rails.getDirection();
 			rails.setDirection(RotationUtils.getRotatedFace(facing, quarterTurns), rails.isOnSlope());
 			
-		} else if (materialData instanceof Mushroom) {
+		} else if (rotatedData instanceof Mushroom) {
 			
-			Mushroom mushroom = (Mushroom) materialData;
+			Mushroom mushroom = (Mushroom) rotatedData;
 			Set<BlockFace> paintedFaces = new HashSet<>(mushroom.getPaintedFaces());
 			
 			for (BlockFace paintedFace : paintedFaces) {
@@ -96,11 +96,11 @@ public class LegacyBlockType extends BlockType {
 			}
 		}
 		
-		return this;
+		return rotatedType;
 	}
 	
 	@Override
-	public WrappedBlockData getWrapped() {
+	protected WrappedBlockData createWrapped() {
 		return WrappedBlockData.createData(materialData.getItemType(), materialData.getData());
 	}
 	
@@ -110,8 +110,8 @@ public class LegacyBlockType extends BlockType {
 	}
 	
 	@Override
-	public LegacyBlockType clone() {
-		return new LegacyBlockType(materialData.clone());
+	public boolean isAir() {
+		return "AIR".equals(materialData.getItemType().name());
 	}
 	
 	@Override
@@ -42,6 +42,16 @@ public class PortalInfoCommand extends BasicCommand {
 			player.sendMessage(ChatColor.GRAY + "  is linked: false");
 		}
 		
+		if (portal.blockCachesAreLoaded()) {
+			long cacheBytes = portal.getFrontCache().getByteSize() + portal.getBackCache().getByteSize();
+			player.sendMessage(ChatColor.GRAY + "  block caches: " + cacheBytes / 1024 + " KiB");
+		}
+		
+		if (portal.projectionsAreLoaded()) {
+			long projectionBytes = portal.getFrontProjection().getByteSize() + portal.getBackProjection().getByteSize();
+			player.sendMessage(ChatColor.GRAY + "  projection caches: " + projectionBytes / 1024 + " KiB");
+		}
+		
 		Set<Portal> connectedPortals = portalHandler.getPortalsLinkedTo(portal);
 		
 		if (connectedPortals.isEmpty()) {
@@ -0,0 +1,121 @@
+package me.gorgeousone.netherview.handlers;
+
+import me.gorgeousone.netherview.LongObjectMap;
+import me.gorgeousone.netherview.NetherView;
+import me.gorgeousone.netherview.blockcache.BlockCache;
+import me.gorgeousone.netherview.blockcache.BlockCacheFactory;
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.portal.Portal;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import org.bukkit.block.Block;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the block changes inside block caches during a tick and applies them together in the next tick.
+ * Multiple changes of the same block are merged into one, and the projections of each cache are updated only once per tick,
+ * so e.g. an explosion results in one fake block packet per player and chunk instead of one per destroyed block.
+ */
+public class BlockChangeQueue {
+	
+	private NetherView main;
+	private ViewHandler viewHandler;
+	
+	private Map<BlockCache, LongObjectMap<BlockChange>> queuedChanges;
+	private BukkitRunnable flushTask;
+	
+	public BlockChangeQueue(NetherView main, ViewHandler viewHandler) {
+		
+		this.main = main;
+		this.viewHandler = viewHandler;
+		this.queuedChanges = new LinkedHashMap<>();
+	}
+	
+	public void reset() {
+		
+		queuedChanges.clear();
+		
+		if (flushTask != null) {
+			flushTask.cancel();
+			flushTask = null;
+		}
+	}
+	
+	/**
+	 * Queues the change of a block for the passed block cache.
+	 *
+	 * @param blockWasOccluding whether the block was occluding before this change
+	 */
+	public void queueChange(BlockCache cache, Block block, BlockType newBlockType, boolean blockWasOccluding) {
+		
+		LongObjectMap<BlockChange> cacheChanges = queuedChanges.computeIfAbsent(cache, key -> new LongObjectMap<>());
+		long packedPos = BlockVec.toLong(block.getX(), block.getY(), block.getZ());
+		BlockChange queuedChange = cacheChanges.get(packedPos);
+		
+		//a block changed multiple times keeps the occlusion from before the first change
+		if (queuedChange == null) {
+			cacheChanges.put(packedPos, new BlockChange(block, newBlockType, blockWasOccluding));
+		} else {
+			queuedChange.newBlockType = newBlockType;
+		}
+		
+		if (flushTask == null) {
+			startFlushTask();
+		}
+	}
+	
+	private void startFlushTask() {
+		
+		flushTask = new BukkitRunnable() {
+			@Override
+			public void run() {
+				flushTask = null;
+				applyQueuedChanges();
+			}
+		};
+		
+		flushTask.runTask(main);
+	}
+	
+	private void applyQueuedChanges() {
+		
+		Map<BlockCache, LongObjectMap<BlockChange>> changes = queuedChanges;
+		queuedChanges = new LinkedHashMap<>();
+		
+		for (Map.Entry<BlockCache, LongObjectMap<BlockChange>> entry : changes.entrySet()) {
+			
+			BlockCache cache = entry.getKey();
+			Portal portal = cache.getPortal();
+			
+			//the portal might have been removed or its caches reloaded in the meantime
+			if (!portal.blockCachesAreLoaded() || portal.getFrontCache() != cache && portal.getBackCache() != cache) {
+				continue;
+			}
+			
+			Map<BlockVec, BlockType> updatedCopies = new HashMap<>();
+			
+			entry.getValue().forEachValue(change -> updatedCopies.putAll(
+					BlockCacheFactory.updateBlockInCache(cache, change.block, change.newBlockType, change.blockWasOccluding)));
+			
+			if (!updatedCopies.isEmpty()) {
+				viewHandler.updateProjections(cache, updatedCopies);
+			}
+		}
+	}
+	
+	private static class BlockChange {
+		
+		private final Block block;
+		private final boolean blockWasOccluding;
+		private BlockType newBlockType;
+		
+		BlockChange(Block block, BlockType newBlockType, boolean blockWasOccluding) {
+			this.block = block;
+			this.newBlockType = newBlockType;
+			this.blockWasOccluding = blockWasOccluding;
+		}
+	}
+}
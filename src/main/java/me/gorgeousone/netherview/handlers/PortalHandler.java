@@ -3,10 +3,17 @@ package me.gorgeousone.netherview.handlers;
 import me.gorgeousone.netherview.NetherView;
 import me.gorgeousone.netherview.blockcache.BlockCache;
 import me.gorgeousone.netherview.blockcache.BlockCacheFactory;
+import me.gorgeousone.netherview.blockcache.BlockCacheGrid;
+import me.gorgeousone.netherview.blockcache.BlockTypePalette;
 import me.gorgeousone.netherview.blockcache.ProjectionCache;
+import me.gorgeousone.netherview.blockcache.RotatedCacheRegistry;
+import me.gorgeousone.netherview.blockcache.SnapshotBlockSource;
 import me.gorgeousone.netherview.blockcache.Transform;
+import me.gorgeousone.netherview.blockcache.WorldBlockSource;
 import me.gorgeousone.netherview.blocktype.Axis;
+import me.gorgeousone.netherview.blocktype.BlockType;
 import me.gorgeousone.netherview.portal.Portal;
+import me.gorgeousone.netherview.portal.PortalGrid;
 import me.gorgeousone.netherview.portal.PortalLocator;
 import me.gorgeousone.netherview.threedstuff.BlockVec;
 import org.bukkit.Bukkit;
@@ -24,6 +31,7 @@ import java.time.LocalTime;
 import java.time.temporal.ChronoUnit;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -37,7 +45,19 @@ public class PortalHandler {
 	private NetherView main;
 	
 	private Map<UUID, Set<Portal>> worldsWithPortals;
+	private Map<Long, Portal> portalsById;
+	private long nextPortalId;
+	private Map<UUID, PortalGrid> portalGrids;
+	private Map<UUID, BlockCacheGrid> blockCacheGrids;
+	
+	//maps counter portals to the portals that are linked to them
+	private Map<Portal, Set<Portal>> linkedPortals;
 	private Map<Portal, Long> recentlyViewedPortals;
+	private Map<UUID, BlockTypePalette> worldPalettes;
+	
+	//portals with block caches being created asynchronously, mapped to the block changes that happened since their blocks were captured
+	private Map<Portal, CacheLoad> loadingPortals;
+	private RotatedCacheRegistry rotatedCaches;
 	
 	private BukkitRunnable expirationTimer;
 	private long cacheExpirationDuration;
@@ -47,14 +67,30 @@ public class PortalHandler {
 		this.main = main;
 		
 		worldsWithPortals = new HashMap<>();
+		portalsById = new HashMap<>();
+		nextPortalId = 1;
+		portalGrids = new HashMap<>();
+		blockCacheGrids = new HashMap<>();
+		linkedPortals = new HashMap<>();
 		recentlyViewedPortals = new HashMap<>();
+		worldPalettes = new HashMap<>();
+		loadingPortals = new HashMap<>();
+		rotatedCaches = new RotatedCacheRegistry();
 		cacheExpirationDuration = Duration.ofMinutes(10).toMillis();
 	}
 	
 	public void reset() {
 		
 		worldsWithPortals.clear();
+		portalsById.clear();
+		nextPortalId = 1;
+		portalGrids.clear();
+		blockCacheGrids.clear();
+		linkedPortals.clear();
 		recentlyViewedPortals.clear();
+		worldPalettes.clear();
+		loadingPortals.clear();
+		rotatedCaches.clear();
 	}
 	
 	public Set<Portal> getPortals(World world) {
@@ -65,6 +101,13 @@ public class PortalHandler {
 		return worldsWithPortals.containsKey(world.getUID());
 	}
 	
+	/**
+	 * Returns the palette shared by all block caches that copy blocks from the passed world.
+	 */
+	public BlockTypePalette getPalette(World world) {
+		return worldPalettes.computeIfAbsent(world.getUID(), worldID -> new BlockTypePalette());
+	}
+	
 	/**
 	 * Returns the count of currently registered portals of the server
 	 */
@@ -92,31 +135,30 @@ public class PortalHandler {
 	 */
 	public Portal getPortalByBlock(Block portalBlock) {
 		
-		for (Portal portal : getPortals(portalBlock.getWorld())) {
-			if (portal.getPortalBlocks().contains(portalBlock)) {
-				return portal;
-			}
+		//a portal block can only be part of one portal and is never the frame block of another one
+		List<Portal> portalsAtBlock = getPortalsAt(portalBlock);
+		
+		if (!portalsAtBlock.isEmpty()) {
+			return portalsAtBlock.get(0);
 		}
 		
 		return addPortalStructure(portalBlock);
 	}
 	
 	/**
-	 * Returns the first portal matching the passed hashcode. Returns null if none was found.
-	 * (Portal hash codes are based on the location of the portal block with the lowest coordinates)
+	 * Returns the portals that the passed block is a portal or frame block of. The returned list must not be modified.
 	 */
-	public Portal getPortalByHashCode(int portalHashCode) {
-		
-		for (UUID worldID : worldsWithPortals.keySet()) {
-			for (Portal portal : worldsWithPortals.get(worldID)) {
-				
-				if (portal.hashCode() == portalHashCode) {
-					return portal;
-				}
-			}
-		}
+	public List<Portal> getPortalsAt(Block block) {
 		
-		return null;
+		PortalGrid portalGrid = portalGrids.get(block.getWorld().getUID());
+		return portalGrid == null ? Collections.emptyList() : portalGrid.getPortalsAt(block.getX(), block.getY(), block.getZ());
+	}
+	
+	/**
+	 * Returns the portal registered with the passed ID. Returns null if none was found.
+	 */
+	public Portal getPortalById(long portalId) {
+		return portalsById.get(portalId);
 	}
 	
 	/**
@@ -125,25 +167,19 @@ public class PortalHandler {
 	 * @param mustBeLinked specify if the returned portal should be linked already
 	 */
 	public Portal getNearestPortal(Location playerLoc, boolean mustBeLinked) {
+		return getNearestPortal(playerLoc, mustBeLinked, Double.MAX_VALUE);
+	}
+	
+	/**
+	 * Returns the the nearest portal in a world to the passed Location that is not further away than the max distance.
+	 * Returns null if none was found.
+	 *
+	 * @param mustBeLinked specify if the returned portal should be linked already
+	 */
+	public Portal getNearestPortal(Location playerLoc, boolean mustBeLinked, double maxDistance) {
 		
-		Portal nearestPortal = null;
-		double minDist = -1;
-		
-		for (Portal portal : getPortals(playerLoc.getWorld())) {
-			
-			if (mustBeLinked && !portal.isLinked()) {
-				continue;
-			}
-			
-			double dist = portal.getLocation().distanceSquared(playerLoc);
-			
-			if (nearestPortal == null || dist < minDist) {
-				nearestPortal = portal;
-				minDist = dist;
-			}
-		}
-		
-		return nearestPortal;
+		PortalGrid portalGrid = portalGrids.get(playerLoc.getWorld().getUID());
+		return portalGrid == null ? null : portalGrid.getNearestPortal(playerLoc, mustBeLinked, maxDistance);
 	}
 	
 	/**
@@ -151,40 +187,44 @@ public class PortalHandler {
 	 */
 	public Set<Portal> getPortalsLinkedTo(Portal portal) {
 		
-		Set<Portal> linkedToPortals = new HashSet<>();
-		
-		for (UUID worldID : worldsWithPortals.keySet()) {
-			for (Portal secondPortal : worldsWithPortals.get(worldID)) {
-				
-				if (secondPortal == portal) {
-					continue;
-				}
-				
-				if (secondPortal.isLinked() && secondPortal.getCounterPortal() == portal) {
-					linkedToPortals.add(secondPortal);
-				}
-			}
-		}
-		
-		return linkedToPortals;
+		Set<Portal> linkedToPortals = linkedPortals.get(portal);
+		return linkedToPortals == null ? new HashSet<>() : new HashSet<>(linkedToPortals);
 	}
 	
 	/**
-	 * Returns all block caches (2 for each portal) of all portals in specified world.
+	 * Returns the loaded block caches that overlap the chunk of the passed block or null if there are none.
+	 * The returned array must not be modified.
 	 */
-	public Set<BlockCache> getBlockCaches(World world) {
+	public BlockCache[] getBlockCachesAt(Block block) {
 		
-		Set<BlockCache> caches = new HashSet<>();
+		BlockCacheGrid cacheGrid = blockCacheGrids.get(block.getWorld().getUID());
+		return cacheGrid == null ? null : cacheGrid.getCachesAt(block.getX(), block.getZ());
+	}
+	
+	private void setBlockCaches(Portal portal, Map.Entry<BlockCache, BlockCache> blockCaches) {
 		
-		for (Portal portal : getPortals(world)) {
-			
-			if (portal.blockCachesAreLoaded()) {
-				caches.add(portal.getFrontCache());
-				caches.add(portal.getBackCache());
-			}
+		removeBlockCaches(portal);
+		portal.setBlockCaches(blockCaches);
+		
+		BlockCacheGrid cacheGrid = blockCacheGrids.computeIfAbsent(portal.getWorld().getUID(), worldID -> new BlockCacheGrid());
+		cacheGrid.add(blockCaches.getKey());
+		cacheGrid.add(blockCaches.getValue());
+	}
+	
+	private void removeBlockCaches(Portal portal) {
+		
+		if (!portal.blockCachesAreLoaded()) {
+			return;
+		}
+		
+		BlockCacheGrid cacheGrid = blockCacheGrids.get(portal.getWorld().getUID());
+		
+		if (cacheGrid != null) {
+			cacheGrid.remove(portal.getFrontCache());
+			cacheGrid.remove(portal.getBackCache());
 		}
 		
-		return caches;
+		portal.removeBlockCaches();
 	}
 	
 	/**
@@ -214,12 +254,25 @@ public class PortalHandler {
 	 * @param portalBlock one block of the structure required to detect the rest of it
 	 */
 	public Portal addPortalStructure(Block portalBlock) {
+		return addPortalStructure(portalBlock, nextPortalId);
+	}
+	
+	private Portal addPortalStructure(Block portalBlock, long portalId) {
+		
+		if (portalsById.containsKey(portalId)) {
+			throw new IllegalStateException("The portal ID " + portalId + " is already used by portal " + portalsById.get(portalId).toString());
+		}
 		
 		Portal portal = PortalLocator.locatePortalStructure(portalBlock);
 		UUID worldID = portal.getWorld().getUID();
 		
+		portal.setId(portalId);
+		portalsById.put(portalId, portal);
+		nextPortalId = Math.max(nextPortalId, portalId + 1);
+		
 		worldsWithPortals.putIfAbsent(worldID, new HashSet<>());
 		worldsWithPortals.get(worldID).add(portal);
+		portalGrids.computeIfAbsent(worldID, id -> new PortalGrid()).add(portal);
 		
 		if (main.debugMessagesEnabled()) {
 			Bukkit.getConsoleSender().sendMessage(ChatColor.DARK_GRAY + "[Debug] Located portal at " + portal.toString());
@@ -228,20 +281,138 @@ public class PortalHandler {
 		return portal;
 	}
 	
+	/**
+	 * Copies the blocks around a portal into its block caches. On non legacy servers only chunk snapshots are taken
+	 * on the main thread, the block caches are created asynchronously and handed to the portal one tick later at the earliest.
+	 * Block changes that happen in the meantime are recorded and applied to the caches when they are handed to the portal.
+	 */
 	private void loadBlockCachesOf(Portal portal) {
 		
-		portal.setBlockCaches(BlockCacheFactory.createBlockCaches(
-				portal,
-				main.getPortalProjectionDist(),
-				main.getWorldBorderBlockType(portal.getWorld().getEnvironment())));
+		if (loadingPortals.containsKey(portal)) {
+			return;
+		}
+		
+		World world = portal.getWorld();
+		int viewDist = main.getPortalProjectionDist();
+		BlockType borderBlockType = main.getWorldBorderBlockType(world.getEnvironment());
+		BlockTypePalette palette = getPalette(world);
+		
+		//legacy block data cannot be read from chunk snapshots without the deprecated magic values
+		if (main.isLegacyServer()) {
+			
+			try {
+				setBlockCaches(portal, BlockCacheFactory.createBlockCaches(portal, viewDist, borderBlockType, palette, new WorldBlockSource(world)));
+				onBlockCachesLoaded(portal, 0);
+				
+			} catch (RuntimeException e) {
+				onBlockCachesFailed(portal, e);
+			}
+			return;
+		}
+		
+		long captureStart = System.nanoTime();
+		Map.Entry<BlockVec, BlockVec> cacheArea = BlockCacheFactory.getCacheArea(portal, viewDist);
+		SnapshotBlockSource blockSource = SnapshotBlockSource.capture(world, cacheArea.getKey(), cacheArea.getValue());
+		long captureTime = System.nanoTime() - captureStart;
+		
+		CacheLoad cacheLoad = new CacheLoad(cacheArea.getKey(), cacheArea.getValue());
+		loadingPortals.put(portal, cacheLoad);
+		
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				
+				Map.Entry<BlockCache, BlockCache> blockCaches;
+				
+				try {
+					blockCaches = BlockCacheFactory.createBlockCaches(portal, viewDist, borderBlockType, palette, blockSource);
+					
+				} catch (RuntimeException e) {
+					
+					//the portal must not stay in loading forever, otherwise its caches could never be loaded again
+					if (main.isEnabled()) {
+						runOnMainThread(() -> {
+							if (loadingPortals.get(portal) == cacheLoad) {
+								onBlockCachesFailed(portal, e);
+							}
+						});
+					}
+					return;
+				}
+				
+				if (!main.isEnabled()) {
+					return;
+				}
+				
+				runOnMainThread(() -> {
+					
+					//the plugin might have been reloaded or the portal removed in the meantime
+					if (loadingPortals.get(portal) != cacheLoad) {
+						return;
+					}
+					
+					if (!getPortals(world).contains(portal)) {
+						loadingPortals.remove(portal);
+						return;
+					}
+					
+					setBlockCaches(portal, blockCaches);
+					cacheLoad.applyRecordedChanges(blockCaches);
+					onBlockCachesLoaded(portal, captureTime);
+				});
+			}
+		}.runTaskAsynchronously(main);
+	}
+	
+	/**
+	 * Records a block change for all portals with block caches being created for an area containing the block.
+	 * The change is applied to the caches when they are handed to the portal, because their blocks might have been captured before it.
+	 *
+	 * @param blockWasOccluding whether the block was occluding before this change
+	 */
+	public void recordBlockChangeDuringLoad(Block block, BlockType newBlockType, boolean blockWasOccluding) {
+		
+		for (Map.Entry<Portal, CacheLoad> entry : loadingPortals.entrySet()) {
+			
+			CacheLoad cacheLoad = entry.getValue();
+			
+			if (entry.getKey().getWorld() == block.getWorld() && cacheLoad.contains(block)) {
+				cacheLoad.recordChange(block, newBlockType, blockWasOccluding);
+			}
+		}
+	}
+	
+	private void runOnMainThread(Runnable task) {
 		
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				task.run();
+			}
+		}.runTask(main);
+	}
+	
+	private void onBlockCachesFailed(Portal portal, RuntimeException e) {
+		
+		loadingPortals.remove(portal);
+		main.getLogger().warning("Unable to load block data for portal " + portal.toString() + ": " + e.getMessage());
+	}
+	
+	private void onBlockCachesLoaded(Portal portal, long mainThreadNanos) {
+		
+		loadingPortals.remove(portal);
 		addPortalToExpirationTimer(portal);
 		
 		if (main.debugMessagesEnabled()) {
-			Bukkit.getConsoleSender().sendMessage(ChatColor.DARK_GRAY + "[Debug] Loaded block data for portal " + portal.toString());
+			Bukkit.getConsoleSender().sendMessage(ChatColor.DARK_GRAY + "[Debug] Loaded block data for portal " + portal.toString()
+			                                      + " (main thread: " + mainThreadNanos / 1000 + " microseconds)");
 		}
 	}
 	
+	/**
+	 * Creates the projection caches of a portal out of the block caches of its counter portal.
+	 * If the block caches of the counter portal are not loaded yet, their (asynchronous) loading is started and the projections stay unloaded.
+	 */
 	public void loadProjectionCachesOf(Portal portal) {
 		
 		if (!portal.isLinked()) {
@@ -253,14 +424,29 @@ public class PortalHandler {
 		
 		if (!counterPortal.blockCachesAreLoaded()) {
 			loadBlockCachesOf(counterPortal);
+			
+			if (!counterPortal.blockCachesAreLoaded()) {
+				return;
+			}
 		}
 		
 		BlockCache frontCache = counterPortal.getFrontCache();
 		BlockCache backCache = counterPortal.getBackCache();
 		
+		ProjectionCache frontProjection;
+		ProjectionCache backProjection;
+		
 		//the projections caches are switching positions because of the transform
-		ProjectionCache frontProjection = new ProjectionCache(portal, backCache, linkTransform);
-		ProjectionCache backProjection = new ProjectionCache(portal, frontCache, linkTransform);
+		if (main.useVirtualProjections()) {
+			frontProjection = ProjectionCache.virtual(portal, backCache, linkTransform);
+			backProjection = ProjectionCache.virtual(portal, frontCache, linkTransform);
+			
+		} else {
+			//portals linked to the same counter portal with the same rotation share the rotated block copies
+			int quarterTurns = linkTransform.getQuarterTurns();
+			frontProjection = ProjectionCache.ofRotatedCache(portal, rotatedCaches.acquire(backCache, quarterTurns), linkTransform);
+			backProjection = ProjectionCache.ofRotatedCache(portal, rotatedCaches.acquire(frontCache, quarterTurns), linkTransform);
+		}
 		
 		portal.setProjectionCaches(new AbstractMap.SimpleEntry<>(frontProjection, backProjection));
 		addPortalToExpirationTimer(portal);
@@ -291,14 +477,24 @@ public class PortalHandler {
 			Bukkit.getConsoleSender().sendMessage(ChatColor.DARK_GRAY + "[Debug] Un-linking " + linkedToPortals.size() + " portal projections.");
 		}
 		
-		for (Portal linkedPortal : getPortalsLinkedTo(portal)) {
-			linkedPortal.removeLink();
+		for (Portal linkedPortal : linkedToPortals) {
+			unlinkPortal(linkedPortal);
 		}
 		
-		portal.removeLink();
+		unlinkPortal(portal);
+		linkedPortals.remove(portal);
 		
+		removeBlockCaches(portal);
+		portalsById.remove(portal.getId());
 		recentlyViewedPortals.remove(portal);
+		loadingPortals.remove(portal);
 		getPortals(portal.getWorld()).remove(portal);
+		
+		PortalGrid portalGrid = portalGrids.get(portal.getWorld().getUID());
+		
+		if (portalGrid != null) {
+			portalGrid.remove(portal);
+		}
 	}
 	
 	/**
@@ -317,8 +513,16 @@ public class PortalHandler {
 			throw new IllegalStateException(ChatColor.GRAY + "" + ChatColor.ITALIC + "These portals are not the same size.");
 		}
 		
+		if (portal.getCounterPortal() != null) {
+			unlinkPortal(portal);
+		}
+		
 		portal.setLinkedTo(counterPortal);
 		
+		if (counterPortal != portal) {
+			linkedPortals.computeIfAbsent(counterPortal, counter -> new HashSet<>()).add(portal);
+		}
+		
 		if (main.debugMessagesEnabled()) {
 			Bukkit.getConsoleSender().sendMessage(ChatColor.DARK_GRAY + "[Debug] Linked portal "
 			                                      + portal.toString() + " to portal "
@@ -326,49 +530,105 @@ public class PortalHandler {
 		}
 	}
 	
+	/**
+	 * Removes the link of a portal to its counter portal, including the projections of the counter portal's blocks.
+	 */
+	public void unlinkPortal(Portal portal) {
+		
+		Portal counterPortal = portal.getCounterPortal();
+		
+		if (counterPortal != null) {
+			
+			Set<Portal> linkedToCounterPortal = linkedPortals.get(counterPortal);
+			
+			if (linkedToCounterPortal != null) {
+				linkedToCounterPortal.remove(portal);
+				
+				if (linkedToCounterPortal.isEmpty()) {
+					linkedPortals.remove(counterPortal);
+				}
+			}
+		}
+		
+		portal.removeLink();
+	}
+	
+	/**
+	 * Saves the locations of all portals by world and their links, both keyed by portal ID.
+	 */
 	public void savePortals(FileConfiguration portalConfig) {
 		
+		//sections of the old format with portals identified by hash code
 		portalConfig.set("portal-locations", null);
 		portalConfig.set("linked-portals", null);
 		
-		ConfigurationSection portalLocations = portalConfig.createSection("portal-locations");
-		ConfigurationSection portalLinks = portalConfig.createSection("linked-portals");
+		portalConfig.set("portals", null);
+		portalConfig.set("portal-links", null);
+		
+		ConfigurationSection portalLocations = portalConfig.createSection("portals");
+		ConfigurationSection portalLinks = portalConfig.createSection("portal-links");
 		
 		for (UUID worldID : worldsWithPortals.keySet()) {
 			
-			List<String> portalsInWorld = new ArrayList<>();
+			ConfigurationSection portalsInWorld = portalLocations.createSection(worldID.toString());
 			
 			for (Portal portal : worldsWithPortals.get(worldID)) {
 				
-				portalsInWorld.add(new BlockVec(portal.getLocation()).toString());
+				portalsInWorld.set(String.valueOf(portal.getId()), new BlockVec(portal.getLocation()).toString());
 				
 				if (portal.isLinked()) {
-					portalLinks.set(String.valueOf(portal.hashCode()), portal.getCounterPortal().hashCode());
+					portalLinks.set(String.valueOf(portal.getId()), portal.getCounterPortal().getId());
 				}
 			}
-			
-			portalLocations.set(worldID.toString(), portalsInWorld);
 		}
 	}
 	
 	public void loadPortals(FileConfiguration portalConfig) {
 		
-		if (!portalConfig.contains("portal-locations")) {
-			return;
+		if (portalConfig.contains("portals")) {
+			loadPortalsById(portalConfig.getConfigurationSection("portals"));
 		}
 		
-		ConfigurationSection portalLocations = portalConfig.getConfigurationSection("portal-locations");
+		//portals saved before IDs were introduced are registered with new IDs
+		if (portalConfig.contains("portal-locations")) {
+			loadLegacyPortals(portalConfig.getConfigurationSection("portal-locations"));
+		}
+	}
+	
+	private void loadPortalsById(ConfigurationSection portalLocations) {
 		
 		for (String worldID : portalLocations.getKeys(false)) {
 			
-			World worldWithPortals = Bukkit.getWorld(UUID.fromString(worldID));
+			World worldWithPortals = getWorldWithPortals(worldID);
 			
 			if (worldWithPortals == null) {
-				main.getLogger().warning("Could not find world with ID: '" + worldID + "'. Portals saved for this world will not be loaded.");
 				continue;
 			}
 			
-			if (!main.canCreatePortalViews(worldWithPortals)) {
+			ConfigurationSection portalsInWorld = portalLocations.getConfigurationSection(worldID);
+			
+			for (String portalId : portalsInWorld.getKeys(false)) {
+				
+				String serializedBlockVec = portalsInWorld.getString(portalId);
+				
+				try {
+					BlockVec portalLoc = BlockVec.fromString(serializedBlockVec);
+					addPortalStructure(worldWithPortals.getBlockAt(portalLoc.getX(), portalLoc.getY(), portalLoc.getZ()), Long.parseLong(portalId));
+					
+				} catch (IllegalArgumentException | IllegalStateException e) {
+					main.getLogger().warning("Unable to load portal " + portalId + " at [" + worldWithPortals.getName() + ", " + serializedBlockVec + "]: " + e.getMessage());
+				}
+			}
+		}
+	}
+	
+	private void loadLegacyPortals(ConfigurationSection portalLocations) {
+		
+		for (String worldID : portalLocations.getKeys(false)) {
+			
+			World worldWithPortals = getWorldWithPortals(worldID);
+			
+			if (worldWithPortals == null) {
 				continue;
 			}
 			
@@ -387,18 +647,58 @@ public class PortalHandler {
 		}
 	}
 	
+	/**
+	 * Returns the world with the passed ID if it exists and portal viewing is enabled in it, otherwise null.
+	 */
+	private World getWorldWithPortals(String worldID) {
+		
+		World worldWithPortals = Bukkit.getWorld(UUID.fromString(worldID));
+		
+		if (worldWithPortals == null) {
+			main.getLogger().warning("Could not find world with ID: '" + worldID + "'. Portals saved for this world will not be loaded.");
+			return null;
+		}
+		
+		return main.canCreatePortalViews(worldWithPortals) ? worldWithPortals : null;
+	}
+	
 	public void loadPortalLinks(FileConfiguration portalConfig) {
 		
-		if (!portalConfig.contains("linked-portals")) {
-			return;
+		if (portalConfig.contains("portal-links")) {
+			
+			ConfigurationSection portalLinks = portalConfig.getConfigurationSection("portal-links");
+			
+			for (String portalId : portalLinks.getKeys(false)) {
+				
+				Portal portal = getPortalById(Long.parseLong(portalId));
+				Portal counterPortal = getPortalById(portalLinks.getLong(portalId));
+				
+				if (portal != null && counterPortal != null) {
+					linkPortalTo(portal, counterPortal);
+				}
+			}
+		}
+		
+		if (portalConfig.contains("linked-portals")) {
+			loadLegacyPortalLinks(portalConfig.getConfigurationSection("linked-portals"));
 		}
+	}
+	
+	/**
+	 * Loads links that were saved with the hash codes of the portals. (Portal hash codes are based on the location of the portal block with the lowest coordinates)
+	 */
+	private void loadLegacyPortalLinks(ConfigurationSection portalLinks) {
+		
+		Map<Integer, Portal> portalsByHashCode = new HashMap<>();
 		
-		ConfigurationSection portalLinks = portalConfig.getConfigurationSection("linked-portals");
+		for (Portal portal : portalsById.values()) {
+			portalsByHashCode.putIfAbsent(portal.hashCode(), portal);
+		}
 		
 		for (String portalHashString : portalLinks.getKeys(false)) {
 			
-			Portal portal = getPortalByHashCode(Integer.parseInt(portalHashString));
-			Portal counterPortal = getPortalByHashCode(portalLinks.getInt(portalHashString));
+			Portal portal = portalsByHashCode.get(Integer.parseInt(portalHashString));
+			Portal counterPortal = portalsByHashCode.get(portalLinks.getInt(portalHashString));
 			
 			if (portal != null && counterPortal != null) {
 				linkPortalTo(portal, counterPortal);
@@ -468,9 +768,14 @@ public class PortalHandler {
 					
 					if (timeSinceLastUse > cacheExpirationDuration) {
 						portal.removeProjectionCaches();
-						portal.removeBlockCaches();
+						removeBlockCaches(portal);
 						entries.remove();
 						
+						//projections of the removed block caches would not receive any block updates anymore
+						for (Portal linkedPortal : getPortalsLinkedTo(portal)) {
+							linkedPortal.removeProjectionCaches();
+						}
+						
 						Bukkit.getConsoleSender().sendMessage(ChatColor.DARK_GRAY + "[Debug] Removed cached blocks of portal " + portal.toString());
 					}
 				}
@@ -482,7 +787,8 @@ public class PortalHandler {
 			}
 		};
 		
-		expirationTimer.runTaskTimerAsynchronously(main, ticksTillNextMinute(), 10 * 20);
+		//the timer runs on the main thread because it changes the block cache index that block events read from
+		expirationTimer.runTaskTimer(main, ticksTillNextMinute(), 10 * 20);
 	}
 	
 	private long ticksTillNextMinute() {
@@ -491,4 +797,58 @@ public class PortalHandler {
 		LocalTime nextMinute = now.truncatedTo(ChronoUnit.MINUTES).plusMinutes(1);
 		return now.until(nextMinute, ChronoUnit.MILLIS) / 50;
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * The area of block caches being created asynchronously and the block changes inside it that happened after it was captured.
+	 */
+	private static class CacheLoad {
+		
+		private final BlockVec min;
+		private final BlockVec max;
+		private final List<RecordedChange> changes;
+		
+		CacheLoad(BlockVec min, BlockVec max) {
+			this.min = min;
+			this.max = max;
+			this.changes = new ArrayList<>();
+		}
+		
+		boolean contains(Block block) {
+			return block.getX() >= min.getX() && block.getX() < max.getX() &&
+			       block.getY() >= min.getY() && block.getY() < max.getY() &&
+			       block.getZ() >= min.getZ() && block.getZ() < max.getZ();
+		}
+		
+		void recordChange(Block block, BlockType newBlockType, boolean blockWasOccluding) {
+			changes.add(new RecordedChange(block, newBlockType, blockWasOccluding));
+		}
+		
+		/**
+		 * Applies the recorded changes to the new block caches. No projections are created from the caches yet, so they do not need to be updated.
+		 */
+		void applyRecordedChanges(Map.Entry<BlockCache, BlockCache> blockCaches) {
+			
+			for (RecordedChange change : changes) {
+				for (BlockCache cache : new BlockCache[]{blockCaches.getKey(), blockCaches.getValue()}) {
+					
+					if (cache.contains(change.block.getX(), change.block.getY(), change.block.getZ())) {
+						BlockCacheFactory.updateBlockInCache(cache, change.block, change.newBlockType, change.blockWasOccluding);
+					}
+				}
+			}
+		}
+	}
+	
+	private static class RecordedChange {
+		
+		private final Block block;
+		private final BlockType newBlockType;
+		private final boolean blockWasOccluding;
+		
+		RecordedChange(Block block, BlockType newBlockType, boolean blockWasOccluding) {
+			this.block = block;
+			this.newBlockType = newBlockType;
+			this.blockWasOccluding = blockWasOccluding;
+		}
+	}
+}
@@ -10,38 +10,74 @@ import me.gorgeousone.netherview.blocktype.BlockType;
 import me.gorgeousone.netherview.portal.Portal;
 import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
 import me.gorgeousone.netherview.threedstuff.BlockVec;
+import me.gorgeousone.netherview.threedstuff.viewfrustum.FrustumSlice;
 import me.gorgeousone.netherview.threedstuff.viewfrustum.ViewFrustum;
 import me.gorgeousone.netherview.threedstuff.viewfrustum.ViewFrustumFactory;
+import me.gorgeousone.netherview.viewsession.BlockPriority;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
+import me.gorgeousone.netherview.viewsession.FakeBlockQueue;
+import me.gorgeousone.netherview.viewsession.ViewPoint;
 import org.bukkit.Bukkit;
 import org.bukkit.Location;
 import org.bukkit.Material;
 import org.bukkit.block.Block;
 import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
 import org.bukkit.util.Vector;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ViewHandler {
 	
+	//the shortest view frustum length of far away players, if the projection is not even shorter
+	private static final double MIN_LOD_FRUSTUM_LENGTH = 2;
+	
 	private NetherView main;
 	private PortalHandler portalHandler;
 	
 	private Map<UUID, Portal> viewedPortals;
 	private Map<UUID, ProjectionCache> viewedProjections;
-	private Map<UUID, Map<BlockVec, BlockType>> playerViewSessions;
+	private Map<UUID, BlockTypeMap> playerViewSessions;
+	private Map<UUID, ViewFrustum> viewedFrustums;
+	private Map<UUID, Integer> viewedDetailDepths;
+	private Map<UUID, ViewPoint> lastViewPoints;
+	
+	//players whose displayed view might miss block changes made while it was calculated, their next view is calculated fully
+	private Set<UUID> outdatedViews;
+	
+	//the players currently looking into each projection. Only accessed from the main thread
+	private Map<ProjectionCache, Set<UUID>> projectionViewers;
+	
+	//players whose view is currently calculated async. Only accessed from the main thread
+	private Set<UUID> pendingViewUpdates;
+	
+	//fake blocks that exceeded the blocks per tick limit. Only changed while holding the lock of the player's view session
+	private Map<UUID, FakeBlockQueue> fakeBlockQueues;
+	private BukkitRunnable fakeBlockSender;
+	private ViewUpdateScheduler viewUpdateScheduler;
 	
 	public ViewHandler(NetherView main, PortalHandler portalHandler) {
 		
 		this.main = main;
 		this.portalHandler = portalHandler;
 		
-		viewedProjections = new HashMap<>();
-		playerViewSessions = new HashMap<>();
-		viewedPortals = new HashMap<>();
+		//view sessions and frustums are also accessed by async view calculations and the packet listener
+		viewedProjections = new ConcurrentHashMap<>();
+		playerViewSessions = new ConcurrentHashMap<>();
+		viewedPortals = new ConcurrentHashMap<>();
+		viewedFrustums = new ConcurrentHashMap<>();
+		viewedDetailDepths = new ConcurrentHashMap<>();
+		outdatedViews = ConcurrentHashMap.newKeySet();
+		lastViewPoints = new HashMap<>();
+		projectionViewers = new HashMap<>();
+		pendingViewUpdates = new HashSet<>();
+		fakeBlockQueues = new ConcurrentHashMap<>();
 	}
 	
 	public void reset() {
@@ -55,56 +91,135 @@ public class ViewHandler {
 		viewedPortals.clear();
 		viewedProjections.clear();
 		playerViewSessions.clear();
+		viewedFrustums.clear();
+		viewedDetailDepths.clear();
+		outdatedViews.clear();
+		lastViewPoints.clear();
+		projectionViewers.clear();
+		pendingViewUpdates.clear();
+		fakeBlockQueues.clear();
+		
+		synchronized (this) {
+			if (fakeBlockSender != null) {
+				fakeBlockSender.cancel();
+				fakeBlockSender = null;
+			}
+		}
+	}
+	
+	/**
+	 * Sets the scheduler that players are marked at again if their view became outdated while it was calculated.
+	 */
+	public void setViewUpdateScheduler(ViewUpdateScheduler viewUpdateScheduler) {
+		this.viewUpdateScheduler = viewUpdateScheduler;
 	}
 	
 	/**
-	 * Returns a Map of BlockTypes linked to their location that are currently displayed with fake blocks
+	 * Returns a map of BlockTypes linked to their packed location that are currently displayed with fake blocks
 	 * to a player.
 	 */
-	public Map<BlockVec, BlockType> getViewSession(Player player) {
-		
-		UUID uuid = player.getUniqueId();
-		
-		playerViewSessions.putIfAbsent(uuid, new HashMap<>());
-		return playerViewSessions.get(uuid);
+	public BlockTypeMap getViewSession(Player player) {
+		return playerViewSessions.computeIfAbsent(player.getUniqueId(), uuid -> new BlockTypeMap());
+	}
+	
+	/**
+	 * Returns the view session of the player without creating a new one. Returns null if the player has none.
+	 */
+	public BlockTypeMap getExistingViewSession(Player player) {
+		return playerViewSessions.get(player.getUniqueId());
 	}
 	
 	public boolean hasViewSession(Player player) {
 		return playerViewSessions.containsKey(player.getUniqueId());
 	}
 	
+	/**
+	 * Returns true if the view of the player is still being calculated async. No other view update should be started in the meantime.
+	 */
+	public boolean isCalculatingView(Player player) {
+		return pendingViewUpdates.contains(player.getUniqueId());
+	}
+	
 	/**
 	 * Removes the players view session and removes all sent fake blocks.
 	 */
 	public void hideViewSession(Player player) {
-		DisplayUtils.removeFakeBlocks(player, getViewSession(player));
-		removeVieSession(player);
+		
+		BlockTypeMap viewSession = playerViewSessions.get(player.getUniqueId());
+		
+		if (viewSession == null) {
+			removeVieSession(player);
+			return;
+		}
+		
+		//an async view calculation must not send fake blocks in between removing the session and restoring the real blocks
+		synchronized (viewSession) {
+			removeVieSession(player);
+			DisplayUtils.removeFakeBlocks(player, viewSession);
+		}
 	}
 	
 	/**
 	 * Only removes the player reference.
 	 */
 	public void removeVieSession(Player player) {
-		playerViewSessions.remove(player.getUniqueId());
-		viewedPortals.remove(player.getUniqueId());
+		
+		UUID playerID = player.getUniqueId();
+		BlockTypeMap viewSession = playerViewSessions.get(playerID);
+		
+		//async view calculations only publish their results while holding the lock of a session that is still current
+		if (viewSession != null) {
+			synchronized (viewSession) {
+				playerViewSessions.remove(playerID);
+				viewedFrustums.remove(playerID);
+				viewedDetailDepths.remove(playerID);
+				fakeBlockQueues.remove(playerID);
+			}
+		}
+		
+		outdatedViews.remove(playerID);
+		
+		viewedPortals.remove(playerID);
+		lastViewPoints.remove(playerID);
+		setViewedProjection(playerID, null);
 	}
 	
 	/**
-	 * Locates the nearest portal to a player and displays a portal animation to them with fake blocks (if in view range).
+	 * Sets the projection a player is looking into and keeps the registry of viewers per projection up to date.
+	 *
+	 * @param projection the new viewed projection or null if the player stopped viewing any
 	 */
-	public void displayNearestPortalTo(Player player, Location playerEyeLoc) {
+	private void setViewedProjection(UUID playerID, ProjectionCache projection) {
 		
-		Portal portal = portalHandler.getNearestPortal(playerEyeLoc, true);
+		ProjectionCache lastProjection = projection != null ? viewedProjections.put(playerID, projection) : viewedProjections.remove(playerID);
 		
-		if (portal == null) {
-			hideViewSession(player);
-			removeVieSession(player);
+		if (lastProjection == projection) {
 			return;
 		}
 		
-		Vector portalDistance = portal.getLocation().subtract(playerEyeLoc).toVector();
+		if (lastProjection != null) {
+			
+			Set<UUID> viewers = projectionViewers.get(lastProjection);
+			
+			if (viewers != null && viewers.remove(playerID) && viewers.isEmpty()) {
+				projectionViewers.remove(lastProjection);
+			}
+		}
 		
-		if (portalDistance.lengthSquared() > main.getPortalDisplayRangeSquared()) {
+		if (projection != null) {
+			projectionViewers.computeIfAbsent(projection, key -> new HashSet<>()).add(playerID);
+		}
+	}
+	
+	/**
+	 * Locates the nearest portal to a player and displays a portal animation to them with fake blocks (if in view range).
+	 */
+	public void displayNearestPortalTo(Player player, Location playerEyeLoc) {
+		
+		Portal portal = portalHandler.getNearestPortal(playerEyeLoc, true, Math.sqrt(main.getPortalDisplayRangeSquared()));
+		
+		//no portal is in display range
+		if (portal == null) {
 			hideViewSession(player);
 			removeVieSession(player);
 			return;
@@ -152,176 +267,635 @@ public class ViewHandler {
 		
 		if (!portal.projectionsAreLoaded()) {
 			portalHandler.loadProjectionCachesOf(portal);
+			
+			//the block caches of the counter portal are still being copied
+			if (!portal.projectionsAreLoaded()) {
+				return;
+			}
 		}
 		
 		portalHandler.updateExpirationTime(portal);
 		portalHandler.updateExpirationTime(portal.getCounterPortal());
 		
 		ProjectionCache projection = ViewFrustumFactory.isPlayerBehindPortal(player, portal) ? portal.getFrontProjection() : portal.getBackProjection();
-		ViewFrustum playerFrustum = ViewFrustumFactory.createFrustum(playerEyeLoc.toVector(), portal.getPortalRect(), projection.getCacheLength());
+		UUID playerID = player.getUniqueId();
+		
+		//skip recalculating the view if the player only moved a fraction of a block and nothing in the projection changed
+		if (main.getViewPointGridSize() > 0) {
+			
+			ViewPoint viewPoint = new ViewPoint(playerEyeLoc, main.getViewPointGridSize(), projection, displayFrustum, hidePortalBlocks);
+			
+			if (hasViewSession(player) && viewPoint.equals(lastViewPoints.get(playerID))) {
+				return;
+			}
+			
+			lastViewPoints.put(playerID, viewPoint);
+		}
 		
-		viewedPortals.put(player.getUniqueId(), portal);
-		viewedProjections.put(player.getUniqueId(), projection);
+		AxisAlignedRect portalRect = portal.getPortalRect();
+		double portalDistance = getDistanceToPortal(playerEyeLoc, portalRect);
+		double frustumLength = getLodFrustumLength(projection, portalDistance);
+		int detailDepth = getLodDetailDepth(portalDistance);
+		boolean isSameProjection = hasViewSession(player) && viewedProjections.get(playerID) == projection;
 		
-		Map<BlockVec, BlockType> visibleBlocks = new HashMap<>();
+		viewedPortals.put(playerID, portal);
+		setViewedProjection(playerID, projection);
 		
-		if (playerFrustum != null && displayFrustum) {
-			visibleBlocks.putAll(getBlocksInFrustum(projection, playerFrustum));
-		}
+		BlockTypeMap viewSession = getViewSession(player);
+		BlockTypeMap portalBlocks = new BlockTypeMap();
 		
 		if (hidePortalBlocks) {
+			
+			BlockType air = BlockType.of(Material.AIR);
+			
 			for (Block portalBlock : portal.getPortalBlocks())
-				visibleBlocks.put(new BlockVec(portalBlock), BlockType.of(Material.AIR));
+				portalBlocks.put(BlockVec.toLong(portalBlock.getX(), portalBlock.getY(), portalBlock.getZ()), air);
+		}
+		
+		Vector eyePos = playerEyeLoc.toVector();
+		BlockPriority priority = new BlockPriority(eyePos, playerEyeLoc.getDirection(), portalRect);
+		int projectionVersion = projection.getVersion();
+		pendingViewUpdates.add(playerID);
+		
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				
+				BlockTypeMap removedBlocks = null;
+				
+				try {
+					removedBlocks = calculateView(player, viewSession, projection, projectionVersion, portalRect, eyePos, frustumLength, detailDepth, priority, portalBlocks, displayFrustum, isSameProjection);
+				} finally {
+					onViewCalculated(player, removedBlocks);
+				}
+			}
+		}.runTaskAsynchronously(main);
+	}
+	
+	/**
+	 * Calculates the blocks of the projection the player can see, updates the view session with them and sends the new fake blocks.
+	 * This runs async and only reads from the projection cache. Returns the blocks that left the view, their real blocks still need to be restored.
+	 * If the projection changed in the meantime (see ProjectionCache.getVersion()), the view is still displayed but marked as outdated.
+	 */
+	private BlockTypeMap calculateView(Player player,
+	                                   BlockTypeMap viewSession,
+	                                   ProjectionCache projection,
+	                                   int projectionVersion,
+	                                   AxisAlignedRect portalRect,
+	                                   Vector eyePos,
+	                                   double frustumLength,
+	                                   int detailDepth,
+	                                   BlockPriority priority,
+	                                   BlockTypeMap portalBlocks,
+	                                   boolean displayFrustum,
+	                                   boolean isSameProjection) {
+		
+		UUID playerID = player.getUniqueId();
+		ViewFrustum playerFrustum = displayFrustum ? ViewFrustumFactory.createFrustum(eyePos, portalRect, frustumLength) : null;
+		ViewFrustum lastFrustum = viewedFrustums.get(playerID);
+		Integer lastDetailDepth = viewedDetailDepths.get(playerID);
+		boolean wasOutdated = outdatedViews.remove(playerID);
+		
+		//only the blocks between the last and the new frustum bounds need to be checked if the player still looks into the same projection,
+		//the same blocks are left out as in the last view and the last view did not miss any block changes
+		if (playerFrustum != null && lastFrustum != null && isSameProjection && lastDetailDepth != null && lastDetailDepth == detailDepth && !wasOutdated) {
+			return displayFrustumChanges(player, viewSession, projection, projectionVersion, lastFrustum, playerFrustum, detailDepth, portalBlocks, priority);
+		}
+		
+		BlockTypeMap visibleBlocks = playerFrustum != null ? getBlocksInFrustum(projection, playerFrustum, detailDepth) : new BlockTypeMap();
+		visibleBlocks.putAll(portalBlocks);
+		return displayBlocks(player, viewSession, visibleBlocks, projection, projectionVersion, playerFrustum, detailDepth, priority);
+	}
+	
+	/**
+	 * Restores the real blocks of fake blocks that left the view of the player and allows the next view update for them.
+	 * Players with an outdated view are marked for another update.
+	 */
+	private void onViewCalculated(Player player, BlockTypeMap removedBlocks) {
+		
+		if (!main.isEnabled()) {
+			return;
+		}
+		
+		new BukkitRunnable() {
+			@Override
+			public void run() {
+				
+				pendingViewUpdates.remove(player.getUniqueId());
+				
+				if (!player.isOnline()) {
+					return;
+				}
+				
+				if (removedBlocks != null) {
+					DisplayUtils.removeFakeBlocks(player, removedBlocks);
+				}
+				
+				if (viewUpdateScheduler != null && outdatedViews.contains(player.getUniqueId())) {
+					viewUpdateScheduler.markDirty(player);
+				}
+			}
+		}.runTask(main);
+	}
+	
+	/**
+	 * Stores the frustum and detail depth of the view that was just displayed to a player or removes them if the player only sees the portal blocks.
+	 * Needs to be called while holding the lock of the player's current view session, so a removed session does not get a frustum again.
+	 */
+	private void setViewedFrustum(UUID playerID, ViewFrustum frustum, int detailDepth) {
+		
+		if (frustum != null) {
+			viewedFrustums.put(playerID, frustum);
+			viewedDetailDepths.put(playerID, detailDepth);
+		} else {
+			viewedFrustums.remove(playerID);
+			viewedDetailDepths.remove(playerID);
 		}
+	}
+	
+	/**
+	 * Marks the view of a player as outdated if blocks of the projection changed since the view calculation started.
+	 * updateProjections() only updates blocks inside the last displayed frustum, so blocks that entered the view with this calculation
+	 * might have been read before their change. Needs to be called while holding the lock of the player's view session.
+	 */
+	private void checkProjectionVersion(UUID playerID, ProjectionCache projection, int projectionVersion) {
 		
-		displayBlocks(player, visibleBlocks);
+		if (projection.getVersion() != projectionVersion) {
+			outdatedViews.add(playerID);
+		}
 	}
 	
-	private Map<BlockVec, BlockType> getBlocksInFrustum(ProjectionCache projection, ViewFrustum frustum) {
+	/**
+	 * Returns true if the view session was not removed from the player in the meantime (e.g. by hiding it).
+	 */
+	private boolean isCurrentViewSession(Player player, BlockTypeMap viewSession) {
+		return playerViewSessions.get(player.getUniqueId()) == viewSession;
+	}
+	
+	/**
+	 * Returns how deep a player can see into the projection. Beyond the LOD start distance the length of the view frustum
+	 * shrinks inversely proportional to the distance to the portal.
+	 */
+	private double getLodFrustumLength(ProjectionCache projection, double portalDistance) {
+		
+		double lodStartDistance = main.getLodStartDistance();
+		int cacheLength = projection.getCacheLength();
+		
+		if (lodStartDistance == 0 || portalDistance <= lodStartDistance) {
+			return cacheLength;
+		}
+		
+		return Math.max(Math.min(MIN_LOD_FRUSTUM_LENGTH, cacheLength), cacheLength * lodStartDistance / portalDistance);
+	}
+	
+	/**
+	 * Returns the count of projection layers after which non occluding blocks are left out for a player at the passed distance to the portal.
+	 * Returns Integer.MAX_VALUE if all blocks are displayed.
+	 */
+	private int getLodDetailDepth(double portalDistance) {
+		
+		double lodStartDistance = main.getLodStartDistance();
+		int lodDetailDepth = main.getLodDetailDepth();
+		
+		if (lodStartDistance == 0 || lodDetailDepth == 0 || portalDistance <= lodStartDistance) {
+			return Integer.MAX_VALUE;
+		}
+		
+		return lodDetailDepth;
+	}
+	
+	/**
+	 * Returns the index of a layer of the projection counted from the near plane of the frustum.
+	 */
+	private int getLayer(ViewFrustum frustum, int depth, boolean isAxisX) {
+		
+		Vector nearPlaneMin = frustum.getNearPlaneRect().getMin();
+		double nearPlaneDepth = isAxisX ? nearPlaneMin.getZ() : nearPlaneMin.getX();
+		return (int) Math.abs(depth + 0.5 - nearPlaneDepth);
+	}
+	
+	/**
+	 * Returns true if the block type is a detail like flora or glass that is left out at the layer.
+	 * Air is never left out because it hides the real blocks behind the portal.
+	 */
+	private boolean isSkippedDetail(BlockType blockType, int layer, int detailDepth) {
+		return layer >= detailDepth && !blockType.isOccluding() && !blockType.isAir();
+	}
+	
+	/**
+	 * Returns all blocks of the projection with at least one vertex inside the frustum. The projection is walked
+	 * layer by layer along the portal normal and only the blocks covered by the frustum in each layer are looked at.
+	 * Non occluding blocks are left out from the passed count of layers on.
+	 */
+	private BlockTypeMap getBlocksInFrustum(ProjectionCache projection, ViewFrustum frustum, int detailDepth) {
 		
 		BlockVec min = projection.getMin();
 		BlockVec max = projection.getMax();
 		
-		AxisAlignedRect nearPlaneRect = frustum.getNearPlaneRect();
-		AxisAlignedRect farPlaneRect = frustum.getFarPlaneRect();
+		boolean isAxisX = frustum.getNearPlaneRect().getAxis() == Axis.X;
+		
+		int minDepth = isAxisX ? min.getZ() : min.getX();
+		int maxDepth = isAxisX ? max.getZ() : max.getX();
+		int minWidth = isAxisX ? min.getX() : min.getZ();
+		int maxWidth = isAxisX ? max.getX() : max.getZ();
 		
-		if (farPlaneRect.getAxis() == Axis.X) {
+		BlockTypeMap blocksInFrustum = new BlockTypeMap();
+		
+		for (int depth = minDepth; depth < maxDepth; depth++) {
 			
-			double newMinX = Math.min(nearPlaneRect.getMin().getX(), farPlaneRect.getMin().getX());
-			double newMaxX = Math.max(nearPlaneRect.getMax().getX(), farPlaneRect.getMax().getX());
+			FrustumSlice slice = frustum.getSlice(depth);
 			
-			if (newMinX > min.getX()) {
-				min.setX((int) Math.floor(newMinX));
-			}
-			if (newMaxX < max.getX()) {
-				max.setX((int) Math.ceil(newMaxX));
+			if (slice.isEmpty()) {
+				continue;
 			}
 			
-		} else {
-			
-			double newMinZ = Math.min(nearPlaneRect.getMin().getZ(), farPlaneRect.getMin().getZ());
-			double newMaxZ = Math.max(nearPlaneRect.getMax().getZ(), farPlaneRect.getMax().getZ());
+			int layer = getLayer(frustum, depth, isAxisX);
+			int sliceMinWidth = Math.max(minWidth, slice.getMinWidth());
+			int sliceMaxWidth = Math.min(maxWidth - 1, slice.getMaxWidth());
+			int sliceMinY = Math.max(min.getY(), slice.getMinY());
+			int sliceMaxY = Math.min(max.getY() - 1, slice.getMaxY());
 			
-			if (newMinZ > min.getZ()) {
-				min.setZ((int) Math.floor(newMinZ));
-			}
-			if (newMaxZ < max.getZ()) {
-				max.setZ((int) Math.ceil(newMaxZ));
+			for (int width = sliceMinWidth; width <= sliceMaxWidth; width++) {
+				for (int y = sliceMinY; y <= sliceMaxY; y++) {
+					
+					if (!slice.contains(width, y)) {
+						continue;
+					}
+					
+					int x = isAxisX ? width : depth;
+					int z = isAxisX ? depth : width;
+					BlockType blockType = projection.getBlockTypeAt(x, y, z);
+					
+					if (blockType != null && !isSkippedDetail(blockType, layer, detailDepth)) {
+						blocksInFrustum.put(BlockVec.toLong(x, y, z), blockType);
+					}
+				}
 			}
 		}
 		
-		Map<BlockVec, BlockType> blocksInFrustum = new HashMap<>();
+		return blocksInFrustum;
+	}
+	
+	/**
+	 * Displays the blocks that became visible and removes the ones that left the view when a player's frustum changed
+	 * from the last to the new one. Per layer of the projection only the blocks in the differences of the frustum slices are looked at.
+	 */
+	private BlockTypeMap displayFrustumChanges(Player player,
+	                                           BlockTypeMap viewSession,
+	                                           ProjectionCache projection,
+	                                           int projectionVersion,
+	                                           ViewFrustum lastFrustum,
+	                                           ViewFrustum newFrustum,
+	                                           int detailDepth,
+	                                           BlockTypeMap portalBlocks,
+	                                           BlockPriority priority) {
+		
+		BlockTypeMap addedBlocks = new BlockTypeMap();
+		BlockTypeMap removedBlocks = new BlockTypeMap();
+		
+		BlockVec min = projection.getMin();
+		BlockVec max = projection.getMax();
+		boolean isAxisX = newFrustum.getNearPlaneRect().getAxis() == Axis.X;
+		
+		int minDepth = isAxisX ? min.getZ() : min.getX();
+		int maxDepth = isAxisX ? max.getZ() : max.getX();
+		
+		//the added blocks can be collected without touching the view session
+		for (int depth = minDepth; depth < maxDepth; depth++) {
+			
+			FrustumSlice lastSlice = lastFrustum.getSlice(depth);
+			FrustumSlice newSlice = newFrustum.getSlice(depth);
+			int layer = getLayer(newFrustum, depth, isAxisX);
+			
+			//hidden portal blocks stay part of the view session
+			forEachInSliceDifference(newSlice, lastSlice, depth, isAxisX, min, max, (x, y, z) -> {
+				
+				BlockType blockType = projection.getBlockTypeAt(x, y, z);
+				long packedPos = BlockVec.toLong(x, y, z);
+				
+				if (blockType != null && !portalBlocks.containsKey(packedPos) && !isSkippedDetail(blockType, layer, detailDepth)) {
+					addedBlocks.put(packedPos, blockType);
+				}
+			});
+		}
 		
-		for (int x = min.getX(); x <= max.getX(); x++) {
-			for (int y = min.getY(); y <= max.getY(); y++) {
-				for (int z = min.getZ(); z <= max.getZ(); z++) {
+		synchronized (viewSession) {
+			
+			if (!isCurrentViewSession(player, viewSession)) {
+				return removedBlocks;
+			}
+			
+			setViewedFrustum(player.getUniqueId(), newFrustum, detailDepth);
+			checkProjectionVersion(player.getUniqueId(), projection, projectionVersion);
+			
+			for (int depth = minDepth; depth < maxDepth; depth++) {
+				
+				FrustumSlice lastSlice = lastFrustum.getSlice(depth);
+				FrustumSlice newSlice = newFrustum.getSlice(depth);
+				
+				forEachInSliceDifference(lastSlice, newSlice, depth, isAxisX, min, max, (x, y, z) -> {
 					
-					BlockVec blockPos = new BlockVec(x, y, z);
+					long packedPos = BlockVec.toLong(x, y, z);
 					
-					if (frustum.contains(blockPos.toVector())) {
-						blocksInFrustum.putAll(projection.getBlockTypesAround(new BlockVec(x, y, z)));
+					if (!portalBlocks.containsKey(packedPos)) {
+						
+						BlockType removedType = viewSession.remove(packedPos);
+						
+						if (removedType != null) {
+							removedBlocks.put(packedPos, removedType);
+						}
 					}
-				}
+				});
 			}
+			
+			viewSession.putAll(addedBlocks);
+			sendFakeBlocks(player, addedBlocks, removedBlocks, priority);
 		}
 		
-		return blocksInFrustum;
+		return removedBlocks;
 	}
 	
 	/**
-	 * Forwards the changes made in a block cache to all the linked projection caches. This also live-updates what the players see
+	 * Passes the positions of the blocks inside the projection bounds that are part of the first slice but not of the second one to the consumer.
+	 */
+	private void forEachInSliceDifference(FrustumSlice slice,
+	                                      FrustumSlice excludedSlice,
+	                                      int depth,
+	                                      boolean isAxisX,
+	                                      BlockVec min,
+	                                      BlockVec max,
+	                                      BlockPosConsumer consumer) {
+		
+		int minWidth = isAxisX ? min.getX() : min.getZ();
+		int maxWidth = (isAxisX ? max.getX() : max.getZ()) - 1;
+		
+		slice.forEachNotIn(excludedSlice, minWidth, maxWidth, min.getY(), max.getY() - 1, (width, y) -> {
+			if (isAxisX) {
+				consumer.accept(width, y, depth);
+			} else {
+				consumer.accept(depth, y, width);
+			}
+		});
+	}
+	
+	@FunctionalInterface
+	private interface BlockPosConsumer {
+		void accept(int x, int y, int z);
+	}
+	
+	/**
+	 * Forwards the changes made in a block cache to all the linked projection caches. This also live-updates what the players see.
+	 * Changed blocks are only sent to the viewers of a projection whose last calculated view frustum contains them.
 	 */
 	public void updateProjections(BlockCache cache, Map<BlockVec, BlockType> updatedCopies) {
 		
 		for (ProjectionCache projection : portalHandler.getProjectionsLinkedTo(cache)) {
 			
 			Map<BlockVec, BlockType> projectionUpdates = new HashMap<>();
+			Transform blockTransform = projection.getTransform();
 			
 			for (Map.Entry<BlockVec, BlockType> entry : updatedCopies.entrySet()) {
 				
-				Transform blockTransform = projection.getTransform();
 				BlockVec projectionBlockPos = blockTransform.transformVec(entry.getKey().clone());
-				BlockType projectionBlockType = entry.getValue().clone().rotate(blockTransform.getQuarterTurns());
+				BlockType projectionBlockType = entry.getValue().rotate(blockTransform.getQuarterTurns());
 				
 				projection.setBlockTypeAt(projectionBlockPos, projectionBlockType);
 				projectionUpdates.put(projectionBlockPos, projectionBlockType);
 			}
 			
-			//TODO stop iterating same players for each projection?
-			for (UUID playerID : viewedProjections.keySet()) {
-				
-				if (viewedProjections.get(playerID) != projection) {
-					continue;
-				}
+			Set<UUID> viewers = projectionViewers.get(projection);
+			
+			if (viewers == null) {
+				continue;
+			}
+			
+			for (UUID playerID : viewers) {
 				
-				Portal portal = viewedPortals.get(playerID);
+				BlockTypeMap viewSession = playerViewSessions.get(playerID);
 				Player player = Bukkit.getPlayer(playerID);
 				
-				ViewFrustum playerFrustum = ViewFrustumFactory.createFrustum(
-						player.getEyeLocation().toVector(),
-						portal.getPortalRect(),
-						projection.getCacheLength());
-				
-				if (playerFrustum == null) {
+				if (viewSession == null || player == null) {
 					continue;
 				}
 				
-				Map<BlockVec, BlockType> blocksInFrustum = new HashMap<>();
-				Map<BlockVec, BlockType> viewSession = getViewSession(player);
+				BlockTypeMap blocksInFrustum = new BlockTypeMap();
+				BlockTypeMap skippedDetails = new BlockTypeMap();
 				
-				for (Map.Entry<BlockVec, BlockType> entry : projectionUpdates.entrySet()) {
+				synchronized (viewSession) {
+					
+					//the frustum and detail depth are published together while holding the lock
+					ViewFrustum playerFrustum = viewedFrustums.get(playerID);
+					Integer detailDepth = viewedDetailDepths.get(playerID);
+					
+					//players without frustum only see the hidden portal blocks
+					if (playerFrustum == null || detailDepth == null) {
+						continue;
+					}
+					
+					boolean isAxisX = playerFrustum.getNearPlaneRect().getAxis() == Axis.X;
+					
+					for (Map.Entry<BlockVec, BlockType> entry : projectionUpdates.entrySet()) {
+						
+						BlockVec blockPos = entry.getKey();
+						int x = blockPos.getX();
+						int y = blockPos.getY();
+						int z = blockPos.getZ();
+						
+						if (!playerFrustum.mayContainBlock(x, y, z) || !playerFrustum.containsBlock(x, y, z)) {
+							continue;
+						}
+						
+						BlockType blockType = entry.getValue();
+						long packedPos = blockPos.toLong();
+						
+						//details left out by the LOD are not displayed either if they are placed later on, a fake block at their position is removed
+						if (blockType != null && isSkippedDetail(blockType, getLayer(playerFrustum, isAxisX ? z : x, isAxisX), detailDepth)) {
+							
+							BlockType removedType = viewSession.remove(packedPos);
+							
+							if (removedType != null) {
+								skippedDetails.put(packedPos, removedType);
+							}
+							
+							continue;
+						}
+						
+						if (blockType == null) {
+							blockType = BlockType.of(blockPos.toBlock(player.getWorld()));
+						}
+						
+						blocksInFrustum.put(packedPos, blockType);
+						viewSession.put(packedPos, blockType);
+					}
 					
-					BlockVec blockPos = entry.getKey();
-					BlockType blockType = entry.getValue();
+					//queued blocks would overwrite the updated ones with their old type
+					FakeBlockQueue queue = fakeBlockQueues.get(playerID);
 					
-					if (blockType == null) {
-						blockType = BlockType.of(blockPos.toBlock(player.getWorld()));
+					if (queue != null) {
+						queue.removeAll(blocksInFrustum);
+						queue.removeAll(skippedDetails);
 					}
 					
-					if (playerFrustum.containsBlock(blockPos.toVector())) {
-						blocksInFrustum.put(blockPos, blockType);
-						viewSession.put(blockPos, blockType);
+					if (!blocksInFrustum.isEmpty()) {
+						DisplayUtils.displayFakeBlocks(player, blocksInFrustum);
+					}
+					
+					if (!skippedDetails.isEmpty()) {
+						DisplayUtils.removeFakeBlocks(player, skippedDetails);
 					}
 				}
-				
-				DisplayUtils.displayFakeBlocks(player, blocksInFrustum);
 			}
 		}
 	}
 	
 	/**
 	 * Adding new blocks to the portal animation for a player.
-	 * But first redundant blocks are filtered out and outdated blocks are refreshed for the player.
+	 * But first redundant blocks are filtered out. Returns the blocks that are not displayed anymore.
+	 *
+	 * @param projectionVersion the version of the projection when the blocks were read from it
+	 * @param frustum           the frustum the blocks were collected with or null if the player only sees the portal blocks
+	 * @param detailDepth       the count of layers after which non occluding blocks were left out
 	 */
-	private void displayBlocks(Player player, Map<BlockVec, BlockType> blocksToDisplay) {
+	private BlockTypeMap displayBlocks(Player player,
+	                                   BlockTypeMap viewSession,
+	                                   BlockTypeMap blocksToDisplay,
+	                                   ProjectionCache projection,
+	                                   int projectionVersion,
+	                                   ViewFrustum frustum,
+	                                   int detailDepth,
+	                                   BlockPriority priority) {
+		
+		BlockTypeMap removedBlocks = new BlockTypeMap();
+		BlockTypeMap addedBlocks = new BlockTypeMap();
+		
+		synchronized (viewSession) {
+			
+			if (!isCurrentViewSession(player, viewSession)) {
+				return removedBlocks;
+			}
+			
+			setViewedFrustum(player.getUniqueId(), frustum, detailDepth);
+			
+			if (frustum != null) {
+				checkProjectionVersion(player.getUniqueId(), projection, projectionVersion);
+			}
+			
+			//the maps cannot be changed while iterating them, so the differences are collected first
+			viewSession.forEach((packedPos, blockType) -> {
+				if (!blocksToDisplay.containsKey(packedPos)) {
+					removedBlocks.put(packedPos, blockType);
+				}
+			});
+			
+			//blocks displayed with another type are sent again, e.g. if the last view was outdated
+			blocksToDisplay.forEach((packedPos, blockType) -> {
+				if (viewSession.get(packedPos) != blockType) {
+					addedBlocks.put(packedPos, blockType);
+				}
+			});
+			
+			removedBlocks.forEach((packedPos, blockType) -> viewSession.remove(packedPos));
+			viewSession.putAll(addedBlocks);
+			sendFakeBlocks(player, addedBlocks, removedBlocks, priority);
+		}
 		
-		Map<BlockVec, BlockType> viewSession = getViewSession(player);
+		return removedBlocks;
+	}
+	
+	/**
+	 * Sends the new fake blocks of a view update to the player or queues them if they exceed the blocks per tick limit.
+	 * Queued blocks that left the view are dropped. Needs to be called while holding the lock of the player's view session.
+	 */
+	private void sendFakeBlocks(Player player, BlockTypeMap addedBlocks, BlockTypeMap removedBlocks, BlockPriority priority) {
 		
-		Map<BlockVec, BlockType> removedBlocks = new HashMap<>();
-		Iterator<BlockVec> iterator = viewSession.keySet().iterator();
+		UUID playerID = player.getUniqueId();
+		FakeBlockQueue queue = fakeBlockQueues.get(playerID);
+		int maxBlocksPerTick = main.getMaxFakeBlocksPerTick();
 		
-		while (iterator.hasNext()) {
+		if (queue != null) {
+			queue.removeAll(removedBlocks);
 			
-			BlockVec blockPos = iterator.next();
+		} else if (maxBlocksPerTick == 0 || addedBlocks.size() <= maxBlocksPerTick) {
+			DisplayUtils.displayFakeBlocks(player, addedBlocks);
+			return;
+		}
+		
+		//pending blocks are sorted again with the latest priority, the player might look somewhere else by now
+		if (queue == null) {
 			
-			if (!blocksToDisplay.containsKey(blockPos)) {
-				removedBlocks.put(blockPos, viewSession.get(blockPos));
-				iterator.remove();
-			}
+			queue = new FakeBlockQueue();
+			queue.addAll(addedBlocks, priority);
+			DisplayUtils.displayFakeBlocks(player, queue.poll(maxBlocksPerTick));
+			fakeBlockQueues.put(playerID, queue);
+			
+		} else {
+			queue.addAll(addedBlocks, priority);
 		}
 		
-		iterator = blocksToDisplay.keySet().iterator();
+		startFakeBlockSender();
+	}
+	
+	/**
+	 * Starts the task sending queued fake blocks each tick if it is not running yet. The task stops itself when all queues are empty.
+	 */
+	private synchronized void startFakeBlockSender() {
+		
+		if (fakeBlockSender != null) {
+			return;
+		}
+		
+		fakeBlockSender = new BukkitRunnable() {
+			@Override
+			public void run() {
+				
+				synchronized (ViewHandler.this) {
+					if (fakeBlockQueues.isEmpty()) {
+						cancel();
+						fakeBlockSender = null;
+						return;
+					}
+				}
+				
+				sendQueuedFakeBlocks();
+			}
+		};
+		
+		fakeBlockSender.runTaskTimer(main, 1, 1);
+	}
+	
+	private void sendQueuedFakeBlocks() {
 		
-		while (iterator.hasNext()) {
+		int maxBlocksPerTick = main.getMaxFakeBlocksPerTick();
+		
+		for (UUID playerID : fakeBlockQueues.keySet()) {
+			
+			BlockTypeMap viewSession = playerViewSessions.get(playerID);
+			Player player = Bukkit.getPlayer(playerID);
 			
-			if (viewSession.containsKey(iterator.next())) {
-				iterator.remove();
+			if (viewSession == null || player == null) {
+				fakeBlockQueues.remove(playerID);
+				continue;
+			}
+			
+			synchronized (viewSession) {
+				
+				FakeBlockQueue queue = fakeBlockQueues.get(playerID);
+				
+				//the session might have been removed while waiting for the lock
+				if (queue == null || !isCurrentViewSession(player, viewSession)) {
+					continue;
+				}
+				
+				//the limit might have been removed with a reload
+				BlockTypeMap polledBlocks = queue.poll(maxBlocksPerTick == 0 ? queue.size() : maxBlocksPerTick);
+				
+				if (queue.isEmpty()) {
+					fakeBlockQueues.remove(playerID);
+				}
+				
+				DisplayUtils.displayFakeBlocks(player, polledBlocks);
 			}
 		}
-		
-		viewSession.putAll(blocksToDisplay);
-		DisplayUtils.removeFakeBlocks(player, removedBlocks);
-		DisplayUtils.displayFakeBlocks(player, blocksToDisplay);
 	}
 	
 	/**
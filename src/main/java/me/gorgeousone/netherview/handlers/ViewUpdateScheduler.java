@@ -0,0 +1,125 @@
+package me.gorgeousone.netherview.handlers;
+
+import me.gorgeousone.netherview.NetherView;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.scheduler.BukkitRunnable;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Collects players whose portal views need to be updated and updates them once per tick instead of once per movement.
+ * Only as many players are updated per tick as fit into the configured time budget, the rest are updated in the next tick.
+ */
+public class ViewUpdateScheduler {
+	
+	private NetherView main;
+	private ViewHandler viewHandler;
+	
+	//players are kept in the order they were marked, so the ones waiting the longest are updated first
+	private Set<UUID> dirtyPlayers;
+	private BukkitRunnable updateTimer;
+	
+	public ViewUpdateScheduler(NetherView main, ViewHandler viewHandler) {
+		
+		this.main = main;
+		this.viewHandler = viewHandler;
+		this.dirtyPlayers = new LinkedHashSet<>();
+	}
+	
+	public void reset() {
+		
+		dirtyPlayers.clear();
+		
+		if (updateTimer != null) {
+			updateTimer.cancel();
+			updateTimer = null;
+		}
+	}
+	
+	/**
+	 * Marks the portal view of a player to be updated in the next tick. Players that are already marked keep their place in the queue.
+	 */
+	public void markDirty(Player player) {
+		
+		dirtyPlayers.add(player.getUniqueId());
+		
+		if (updateTimer == null) {
+			startUpdateTimer();
+		}
+	}
+	
+	public void unmark(Player player) {
+		dirtyPlayers.remove(player.getUniqueId());
+	}
+	
+	private void startUpdateTimer() {
+		
+		updateTimer = new BukkitRunnable() {
+			@Override
+			public void run() {
+				
+				if (dirtyPlayers.isEmpty()) {
+					this.cancel();
+					updateTimer = null;
+					return;
+				}
+				
+				updateDirtyPlayers();
+			}
+		};
+		
+		updateTimer.runTaskTimer(main, 1, 1);
+	}
+	
+	private void updateDirtyPlayers() {
+		
+		long deadline = System.nanoTime() + main.getViewUpdateBudgetNanos();
+		Iterator<UUID> iterator = dirtyPlayers.iterator();
+		int updatedPlayers = 0;
+		
+		//at least one player is updated per tick so no one waits forever if a single update exceeds the budget
+		while (iterator.hasNext() && (updatedPlayers == 0 || System.nanoTime() < deadline)) {
+			
+			Player player = Bukkit.getPlayer(iterator.next());
+			
+			//players stay marked until the async calculation of their last view update is finished
+			if (player != null && viewHandler.isCalculatingView(player)) {
+				continue;
+			}
+			
+			iterator.remove();
+			
+			if (player == null || !player.isOnline()) {
+				continue;
+			}
+			
+			viewHandler.displayNearestPortalTo(player, player.getEyeLocation());
+			updatedPlayers++;
+		}
+		
+		if (!iterator.hasNext() || !main.debugMessagesEnabled()) {
+			return;
+		}
+		
+		int postponedPlayers = 0;
+		
+		//players still waiting for their async view calculation were not postponed by the budget
+		while (iterator.hasNext()) {
+			
+			Player player = Bukkit.getPlayer(iterator.next());
+			
+			if (player == null || !viewHandler.isCalculatingView(player)) {
+				postponedPlayers++;
+			}
+		}
+		
+		if (postponedPlayers > 0) {
+			Bukkit.getConsoleSender().sendMessage(ChatColor.DARK_GRAY + "[Debug] Postponed view updates of " + postponedPlayers + " players to the next tick");
+		}
+	}
+}
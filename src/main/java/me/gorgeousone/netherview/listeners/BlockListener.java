@@ -4,18 +4,21 @@ import com.comphenix.protocol.PacketType;
 import com.comphenix.protocol.ProtocolLibrary;
 import com.comphenix.protocol.events.ListenerPriority;
 import com.comphenix.protocol.events.PacketAdapter;
+import com.comphenix.protocol.events.PacketContainer;
 import com.comphenix.protocol.events.PacketEvent;
 import com.comphenix.protocol.wrappers.BlockPosition;
+import com.comphenix.protocol.wrappers.ChunkCoordIntPair;
+import com.comphenix.protocol.wrappers.MultiBlockChangeInfo;
 import me.gorgeousone.netherview.NetherView;
 import me.gorgeousone.netherview.blockcache.BlockCache;
-import me.gorgeousone.netherview.blockcache.BlockCacheFactory;
 import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.handlers.BlockChangeQueue;
 import me.gorgeousone.netherview.handlers.PortalHandler;
 import me.gorgeousone.netherview.handlers.ViewHandler;
 import me.gorgeousone.netherview.portal.Portal;
 import me.gorgeousone.netherview.threedstuff.BlockVec;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
 import org.bukkit.Material;
-import org.bukkit.World;
 import org.bukkit.block.Block;
 import org.bukkit.block.BlockState;
 import org.bukkit.entity.Player;
@@ -37,104 +40,159 @@ import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.player.PlayerInteractEvent;
 import org.bukkit.event.world.StructureGrowEvent;
 
-import java.util.HashSet;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 public class BlockListener implements Listener {
 	
 	private NetherView main;
 	private PortalHandler portalHandler;
 	private ViewHandler viewHandler;
+	private BlockChangeQueue blockChangeQueue;
 	private Material portalMaterial;
 	
 	public BlockListener(NetherView main,
 	                     PortalHandler portalHandler,
 	                     ViewHandler viewHandler,
+	                     BlockChangeQueue blockChangeQueue,
 	                     Material portalMaterial) {
 		
 		this.main = main;
 		this.portalHandler = portalHandler;
 		this.viewHandler = viewHandler;
+		this.blockChangeQueue = blockChangeQueue;
 		this.portalMaterial = portalMaterial;
 		addBlockUpdateInterceptor();
 	}
 	
+	/**
+	 * Intercepts block updates sent to players with a view session and replaces the updates of blocks displayed as fake blocks,
+	 * so the server does not overwrite them. Packets outside the bounding box of the session are passed on without any further work.
+	 * The session is read while holding its lock, because async view calculations might change it at the same time.
+	 */
 	private void addBlockUpdateInterceptor() {
 		
 		ProtocolLibrary.getProtocolManager().addPacketListener(
 				
-				new PacketAdapter(main, ListenerPriority.HIGHEST, PacketType.Play.Server.BLOCK_CHANGE) {
+				new PacketAdapter(main, ListenerPriority.HIGHEST, PacketType.Play.Server.BLOCK_CHANGE, PacketType.Play.Server.MULTI_BLOCK_CHANGE) {
 					
 					@Override
 					public void onPacketSending(PacketEvent event) {
 						
-						if (event.isCancelled() || event.getPacketType() != PacketType.Play.Server.BLOCK_CHANGE) {
+						if (event.isCancelled()) {
 							return;
 						}
 						
-						Player player = event.getPlayer();
+						BlockTypeMap viewSession = viewHandler.getExistingViewSession(event.getPlayer());
 						
-						if (!viewHandler.hasViewSession(player)) {
+						if (viewSession == null || viewSession.isEmpty()) {
 							return;
 						}
 						
-						BlockPosition blockPos = event.getPacket().getBlockPositionModifier().getValues().get(0);
-						BlockVec blockPosVec = new BlockVec(blockPos);
-						
-						//cannot limit location check to projection cache size because the portal itself is not included in that area, yet needed
-//						if (!projection.contains(blockPosVec)) {
-//							return;
-//						}
-						
-						Map<BlockVec, BlockType> viewSession = viewHandler.getViewSession(player);
-						
-						if (viewSession.containsKey(blockPosVec)) {
-							event.getPacket().getBlockData().write(0, viewSession.get(blockPosVec).getWrapped());
+						synchronized (viewSession) {
+							
+							if (event.getPacketType() == PacketType.Play.Server.BLOCK_CHANGE) {
+								rewriteBlockChange(event, viewSession);
+								
+							} else if (event.getPacketType() == PacketType.Play.Server.MULTI_BLOCK_CHANGE) {
+								rewriteMultiBlockChange(event, viewSession);
+							}
 						}
 					}
 				}
 		);
 	}
 	
-	private void removeDamagedPortals(Block block) {
+	private void rewriteBlockChange(PacketEvent event, BlockTypeMap viewSession) {
 		
-		World blockWorld = block.getWorld();
+		BlockPosition blockPos = event.getPacket().getBlockPositionModifier().read(0);
+		int x = blockPos.getX();
+		int y = blockPos.getY();
+		int z = blockPos.getZ();
 		
-		if (!portalHandler.hasPortals(blockWorld)) {
+		//the session also contains the portal blocks, so its bounds cover everything that has to be rewritten
+		if (!viewSession.mayContain(x, y, z)) {
 			return;
 		}
 		
-		BlockVec blockLoc = new BlockVec(block);
+		BlockType fakeBlockType = viewSession.get(BlockVec.toLong(x, y, z));
 		
-		for (Portal portal : new HashSet<>(portalHandler.getPortals(blockWorld))) {
-			
-			if (portal.contains(blockLoc)) {
-				viewHandler.removePortal(portal);
-				portalHandler.removePortal(portal);
-			}
+		if (fakeBlockType == null) {
+			return;
 		}
+		
+		//the same packet might be sent to other players as well, who should still see the real block
+		PacketContainer packet = event.getPacket().shallowClone();
+		packet.getBlockData().write(0, fakeBlockType.getWrapped());
+		event.setPacket(packet);
 	}
 	
-	private void updateBlockCaches(Block block, BlockType newBlockType, boolean blockWasOccluding) {
+	private void rewriteMultiBlockChange(PacketEvent event, BlockTypeMap viewSession) {
 		
-		World blockWorld = block.getWorld();
+		ChunkCoordIntPair chunkPos = event.getPacket().getChunkCoordIntPairs().read(0);
 		
-		if (!portalHandler.hasPortals(blockWorld)) {
+		//reading the block infos is expensive, so the chunk position is checked first
+		if (!viewSession.mayContainChunk(chunkPos.getChunkX(), chunkPos.getChunkZ())) {
 			return;
 		}
 		
-		BlockVec blockPos = new BlockVec(block);
+		MultiBlockChangeInfo[] blockInfos = event.getPacket().getMultiBlockChangeInfoArrays().read(0);
+		boolean containsFakeBlocks = false;
 		
-		for (BlockCache cache : portalHandler.getBlockCaches(blockWorld)) {
+		for (MultiBlockChangeInfo blockInfo : blockInfos) {
 			
-			if (!cache.contains(blockPos)) {
+			int x = blockInfo.getAbsoluteX();
+			int y = blockInfo.getY();
+			int z = blockInfo.getAbsoluteZ();
+			
+			if (!viewSession.mayContain(x, y, z)) {
 				continue;
 			}
 			
-			Map<BlockVec, BlockType> updatedCopies = BlockCacheFactory.updateBlockInCache(cache, block, newBlockType, blockWasOccluding);
+			BlockType fakeBlockType = viewSession.get(BlockVec.toLong(x, y, z));
 			
-			if (!updatedCopies.isEmpty()) {
-				viewHandler.updateProjections(cache, updatedCopies);
+			if (fakeBlockType != null) {
+				blockInfo.setData(fakeBlockType.getWrapped());
+				containsFakeBlocks = true;
+			}
+		}
+		
+		if (containsFakeBlocks) {
+			PacketContainer packet = event.getPacket().shallowClone();
+			packet.getMultiBlockChangeInfoArrays().write(0, blockInfos);
+			event.setPacket(packet);
+		}
+	}
+	
+	private void removeDamagedPortals(Block block) {
+		
+		List<Portal> damagedPortals = portalHandler.getPortalsAt(block);
+		
+		if (damagedPortals.isEmpty()) {
+			return;
+		}
+		
+		//removing the portals changes the list
+		for (Portal portal : new ArrayList<>(damagedPortals)) {
+			viewHandler.removePortal(portal);
+			portalHandler.removePortal(portal);
+		}
+	}
+	
+	private void updateBlockCaches(Block block, BlockType newBlockType, boolean blockWasOccluding) {
+		
+		//caches that are still being created might have captured the block before this change
+		portalHandler.recordBlockChangeDuringLoad(block, newBlockType, blockWasOccluding);
+		
+		BlockCache[] caches = portalHandler.getBlockCachesAt(block);
+		
+		if (caches == null) {
+			return;
+		}
+		
+		for (BlockCache cache : caches) {
+			if (cache.contains(block.getX(), block.getY(), block.getZ())) {
+				blockChangeQueue.queueChange(cache, block, newBlockType, blockWasOccluding);
 			}
 		}
 	}
@@ -152,10 +210,9 @@ public class BlockListener implements Listener {
 			return;
 		}
 		
-		Map<BlockVec, BlockType> viewSession = viewHandler.getViewSession(player);
-		BlockVec blockPos = new BlockVec(event.getClickedBlock());
+		Block clickedBlock = event.getClickedBlock();
 		
-		if (viewSession.containsKey(blockPos)) {
+		if (viewHandler.getViewSession(player).containsKey(BlockVec.toLong(clickedBlock.getX(), clickedBlock.getY(), clickedBlock.getZ()))) {
 			event.setCancelled(true);
 		}
 	}
@@ -185,10 +242,7 @@ public class BlockListener implements Listener {
 			return;
 		}
 		
-		Map<BlockVec, BlockType> viewSession = viewHandler.getViewSession(player);
-		BlockVec blockPos = new BlockVec(block);
-		
-		if (viewSession.containsKey(blockPos)) {
+		if (viewHandler.getViewSession(player).containsKey(BlockVec.toLong(block.getX(), block.getY(), block.getZ()))) {
 			event.setCancelled(true);
 		}
 	}
@@ -0,0 +1,113 @@
+package me.gorgeousone.netherview.listeners;
+
+import com.comphenix.protocol.PacketType;
+import com.comphenix.protocol.ProtocolLibrary;
+import com.comphenix.protocol.events.ListenerPriority;
+import com.comphenix.protocol.events.PacketAdapter;
+import com.comphenix.protocol.events.PacketContainer;
+import com.comphenix.protocol.events.PacketEvent;
+import me.gorgeousone.netherview.NetherView;
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.blocktype.GlobalBlockIds;
+import me.gorgeousone.netherview.handlers.ViewHandler;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
+import me.gorgeousone.netherview.viewsession.ChunkDataPatcher;
+import org.bukkit.Bukkit;
+import org.bukkit.ChatColor;
+import org.bukkit.Material;
+
+/**
+ * Patches the fake blocks of view sessions into chunks resent to players, so the projection is not wiped by e.g. a relight.
+ * Chunks not overlapping the bounding box of the player's view session are passed on without being read.
+ */
+public class ChunkPacketListener {
+	
+	//bits of the global palette in 1.14 and 1.15
+	private static final int GLOBAL_BITS_PER_BLOCK = 14;
+	
+	private NetherView main;
+	private ViewHandler viewHandler;
+	private ChunkDataPatcher chunkDataPatcher;
+	
+	public ChunkPacketListener(NetherView main, ViewHandler viewHandler) {
+		
+		this.main = main;
+		this.viewHandler = viewHandler;
+		
+		GlobalBlockIds globalIds = new GlobalBlockIds();
+		
+		this.chunkDataPatcher = new ChunkDataPatcher(
+				globalIds::getGlobalId,
+				GLOBAL_BITS_PER_BLOCK,
+				globalIds.getGlobalId(BlockType.of(Material.AIR)),
+				globalIds.getGlobalId(BlockType.of(Material.CAVE_AIR)),
+				globalIds.getGlobalId(BlockType.of(Material.VOID_AIR)));
+		
+		addChunkPacketInterceptor();
+	}
+	
+	private void addChunkPacketInterceptor() {
+		
+		ProtocolLibrary.getProtocolManager().addPacketListener(
+				
+				new PacketAdapter(main, ListenerPriority.HIGHEST, PacketType.Play.Server.MAP_CHUNK) {
+					
+					@Override
+					public void onPacketSending(PacketEvent event) {
+						
+						if (event.isCancelled() || !main.rewritesChunkPackets()) {
+							return;
+						}
+						
+						BlockTypeMap viewSession = viewHandler.getExistingViewSession(event.getPlayer());
+						
+						if (viewSession == null || viewSession.isEmpty()) {
+							return;
+						}
+						
+						PacketContainer packet = event.getPacket();
+						int chunkX = packet.getIntegers().read(0);
+						int chunkZ = packet.getIntegers().read(1);
+						
+						ChunkDataPatcher.PatchedChunk patchedChunk;
+						
+						try {
+							//the session must not be changed by an async view calculation while it is read, not even its bounds
+							synchronized (viewSession) {
+								
+								if (!viewSession.mayContainChunk(chunkX, chunkZ)) {
+									return;
+								}
+								
+								patchedChunk = chunkDataPatcher.patch(
+										chunkX,
+										chunkZ,
+										packet.getIntegers().read(2),
+										packet.getBooleans().read(0),
+										packet.getByteArrays().read(0),
+										viewSession);
+							}
+							
+						} catch (IllegalArgumentException e) {
+							
+							if (main.debugMessagesEnabled()) {
+								Bukkit.getConsoleSender().sendMessage(ChatColor.DARK_GRAY + "[Debug] " + e.getMessage());
+							}
+							
+							return;
+						}
+						
+						if (patchedChunk == null) {
+							return;
+						}
+						
+						//the same packet might be sent to other players as well, who should still see the real blocks
+						PacketContainer patchedPacket = packet.shallowClone();
+						patchedPacket.getIntegers().write(2, patchedChunk.getSectionMask());
+						patchedPacket.getByteArrays().write(0, patchedChunk.getData());
+						event.setPacket(patchedPacket);
+					}
+				}
+		);
+	}
+}
@@ -2,6 +2,7 @@ package me.gorgeousone.netherview.listeners;
 
 import me.gorgeousone.netherview.NetherView;
 import me.gorgeousone.netherview.handlers.ViewHandler;
+import me.gorgeousone.netherview.handlers.ViewUpdateScheduler;
 import org.bukkit.GameMode;
 import org.bukkit.Location;
 import org.bukkit.World;
@@ -12,16 +13,17 @@ import org.bukkit.event.player.PlayerGameModeChangeEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerToggleSneakEvent;
 import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.util.Vector;
 
 public class PlayerMoveListener implements Listener {
 	
 	private NetherView main;
 	private ViewHandler viewHandler;
+	private ViewUpdateScheduler viewUpdateScheduler;
 	
-	public PlayerMoveListener(NetherView main, ViewHandler viewHandler) {
+	public PlayerMoveListener(NetherView main, ViewHandler viewHandler, ViewUpdateScheduler viewUpdateScheduler) {
 		this.main = main;
 		this.viewHandler = viewHandler;
+		this.viewUpdateScheduler = viewUpdateScheduler;
 	}
 	
 	@EventHandler
@@ -31,6 +33,8 @@ public class PlayerMoveListener implements Listener {
 		
 		if (!player.hasPermission(NetherView.VIEW_PERM) || player.getGameMode() == GameMode.SPECTATOR) {
 			
+			viewUpdateScheduler.unmark(player);
+			
 			if (viewHandler.hasViewSession(player)) {
 				viewHandler.hideViewSession(player);
 			}
@@ -47,9 +51,9 @@ public class PlayerMoveListener implements Listener {
 		Location from = event.getFrom();
 		Location to = event.getTo();
 		
+		//the view is updated in the next tick with the eye location the player has by then
 		if (!from.toVector().equals(to.toVector())) {
-			Vector movement = to.clone().subtract(from).toVector();
-			viewHandler.displayNearestPortalTo(player, player.getEyeLocation().add(movement));
+			viewUpdateScheduler.markDirty(player);
 		}
 	}
 	
@@ -68,7 +72,7 @@ public class PlayerMoveListener implements Listener {
 			new BukkitRunnable() {
 				@Override
 				public void run() {
-					viewHandler.displayNearestPortalTo(player, player.getEyeLocation());
+					viewUpdateScheduler.markDirty(player);
 				}
 			}.runTaskLater(main, 2);
 		}
@@ -78,6 +82,7 @@ public class PlayerMoveListener implements Listener {
 	public void onGameModeChange(PlayerGameModeChangeEvent event) {
 		
 		if (event.getNewGameMode() == GameMode.SPECTATOR) {
+			viewUpdateScheduler.unmark(event.getPlayer());
 			viewHandler.hideViewSession(event.getPlayer());
 		}
 	}
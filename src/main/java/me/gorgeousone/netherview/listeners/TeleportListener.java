@@ -123,7 +123,7 @@ public class TeleportListener implements Listener {
 			}
 			
 			if (portal.isLinked()) {
-				portal.removeLink();
+				portalHandler.unlinkPortal(portal);
 				portalHandler.linkPortalTo(portal, counterPortal);
 				return false;
 			}
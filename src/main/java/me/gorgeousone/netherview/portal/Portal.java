@@ -17,6 +17,7 @@ import java.util.Set;
 
 public class Portal {
 	
+	private long id;
 	private World world;
 	private AxisAlignedRect portalRect;
 	
@@ -57,6 +58,17 @@ public class Portal {
 		this.exists = false;
 	}
 	
+	/**
+	 * Returns the ID the portal is registered and saved with. IDs stay the same across restarts and are never shared by two portals.
+	 */
+	public long getId() {
+		return id;
+	}
+	
+	public void setId(long id) {
+		this.id = id;
+	}
+	
 	public World getWorld() {
 		return world;
 	}
@@ -145,11 +157,21 @@ public class Portal {
 	}
 	
 	public void setProjectionCaches(Map.Entry<ProjectionCache, ProjectionCache> projectionCaches) {
+		
+		removeProjectionCaches();
 		this.projectionCaches = projectionCaches;
 	}
 	
+	/**
+	 * Removes the projection caches and releases the rotated block copies they might share with other portals.
+	 */
 	public void removeProjectionCaches() {
-		this.projectionCaches = null;
+		
+		if (projectionCaches != null) {
+			projectionCaches.getKey().release();
+			projectionCaches.getValue().release();
+			projectionCaches = null;
+		}
 	}
 	
 	public boolean projectionsAreLoaded() {
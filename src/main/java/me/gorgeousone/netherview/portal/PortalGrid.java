@@ -0,0 +1,260 @@
+package me.gorgeousone.netherview.portal;
+
+import me.gorgeousone.netherview.LongObjectMap;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import org.bukkit.Location;
+import org.bukkit.block.Block;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A spatial index over the portals of one world. Portals are sorted into chunk sized columns by their location (Portal.getLocation()),
+ * so nearest portal queries only have to look at the columns around the queried location.
+ * Additionally the portals are listed by the packed positions of their portal and frame blocks.
+ */
+public class PortalGrid {
+	
+	private static final int CELL_SIZE = 16;
+	
+	private final LongObjectMap<List<Entry>> cells;
+	private final LongObjectMap<List<Portal>> portalsByBlock;
+	private int portalCount;
+	
+	//bounds of all columns that ever contained a portal, nearest portal searches never need to look further
+	private int minCellX;
+	private int minCellZ;
+	private int maxCellX;
+	private int maxCellZ;
+	
+	public PortalGrid() {
+		cells = new LongObjectMap<>();
+		portalsByBlock = new LongObjectMap<>();
+	}
+	
+	public int size() {
+		return portalCount;
+	}
+	
+	public boolean isEmpty() {
+		return portalCount == 0;
+	}
+	
+	public void add(Portal portal) {
+		
+		Entry entry = new Entry(portal);
+		int cellX = getCellCoord(entry.x);
+		int cellZ = getCellCoord(entry.z);
+		
+		if (portalCount == 0 && cells.isEmpty()) {
+			minCellX = maxCellX = cellX;
+			minCellZ = maxCellZ = cellZ;
+		} else {
+			minCellX = Math.min(minCellX, cellX);
+			minCellZ = Math.min(minCellZ, cellZ);
+			maxCellX = Math.max(maxCellX, cellX);
+			maxCellZ = Math.max(maxCellZ, cellZ);
+		}
+		
+		cells.computeIfAbsent(getCellKey(cellX, cellZ), key -> new ArrayList<>()).add(entry);
+		portalCount++;
+		
+		//frame blocks can be shared by neighbouring portals
+		for (Block block : getPortalAndFrameBlocks(portal)) {
+			portalsByBlock.computeIfAbsent(BlockVec.toLong(block.getX(), block.getY(), block.getZ()), pos -> new ArrayList<>(1)).add(portal);
+		}
+	}
+	
+	public void remove(Portal portal) {
+		
+		Location portalLoc = portal.getLocation();
+		long cellKey = getCellKey(getCellCoord(portalLoc.getX()), getCellCoord(portalLoc.getZ()));
+		List<Entry> cell = cells.get(cellKey);
+		
+		if (cell == null || !cell.removeIf(entry -> entry.portal == portal)) {
+			return;
+		}
+		
+		if (cell.isEmpty()) {
+			cells.remove(cellKey);
+		}
+		
+		portalCount--;
+		
+		for (Block block : getPortalAndFrameBlocks(portal)) {
+			
+			long packedPos = BlockVec.toLong(block.getX(), block.getY(), block.getZ());
+			List<Portal> portalsAtBlock = portalsByBlock.get(packedPos);
+			
+			if (portalsAtBlock != null && portalsAtBlock.remove(portal) && portalsAtBlock.isEmpty()) {
+				portalsByBlock.remove(packedPos);
+			}
+		}
+	}
+	
+	public void clear() {
+		cells.clear();
+		portalsByBlock.clear();
+		portalCount = 0;
+	}
+	
+	/**
+	 * Returns the portals that the block at the passed position is a portal or frame block of. The returned list must not be modified.
+	 */
+	public List<Portal> getPortalsAt(int x, int y, int z) {
+		return portalsByBlock.getOrDefault(BlockVec.toLong(x, y, z), Collections.emptyList());
+	}
+	
+	/**
+	 * Returns the portal nearest to the passed location that is not further away than the max distance. Returns null if none was found.
+	 * Columns are searched in rings around the location until no closer portal can be found in the next ring anymore.
+	 *
+	 * @param mustBeLinked specify if the returned portal should be linked already
+	 */
+	public Portal getNearestPortal(Location loc, boolean mustBeLinked, double maxDistance) {
+		
+		if (portalCount == 0) {
+			return null;
+		}
+		
+		int cellX = getCellCoord(loc.getX());
+		int cellZ = getCellCoord(loc.getZ());
+		
+		int maxRing = Math.max(
+				Math.max(cellX - minCellX, maxCellX - cellX),
+				Math.max(cellZ - minCellZ, maxCellZ - cellZ));
+		
+		if (maxDistance < Double.MAX_VALUE) {
+			maxRing = Math.min(maxRing, (int) Math.ceil(maxDistance / CELL_SIZE) + 1);
+		}
+		
+		NearestSearch search = new NearestSearch(loc, mustBeLinked, maxDistance * maxDistance);
+		int visitedCells = 0;
+		
+		for (int ring = 0; ring <= maxRing; ring++) {
+			
+			//portals in this ring are at least this far away horizontally
+			double ringDist = Math.max(0, ring - 1) * CELL_SIZE;
+			
+			if (ringDist * ringDist > search.nearestDistSquared) {
+				break;
+			}
+			
+			//in sparse areas searching more columns than there are portals would take longer than comparing all portals
+			if (visitedCells > portalCount) {
+				
+				cells.forEachValue(search::visit);
+				break;
+			}
+			
+			visitedCells += visitRing(cellX, cellZ, ring, search);
+		}
+		
+		return search.nearest;
+	}
+	
+	/**
+	 * Visits all columns with the chebyshev distance of the ring to the center column and returns the count of them.
+	 */
+	private int visitRing(int centerX, int centerZ, int ring, NearestSearch search) {
+		
+		if (ring == 0) {
+			search.visit(cells.get(getCellKey(centerX, centerZ)));
+			return 1;
+		}
+		
+		for (int cellX = centerX - ring; cellX <= centerX + ring; cellX++) {
+			search.visit(cells.get(getCellKey(cellX, centerZ - ring)));
+			search.visit(cells.get(getCellKey(cellX, centerZ + ring)));
+		}
+		
+		for (int cellZ = centerZ - ring + 1; cellZ < centerZ + ring; cellZ++) {
+			search.visit(cells.get(getCellKey(centerX - ring, cellZ)));
+			search.visit(cells.get(getCellKey(centerX + ring, cellZ)));
+		}
+		
+		return 8 * ring;
+	}
+	
+	private static List<Block> getPortalAndFrameBlocks(Portal portal) {
+		
+		List<Block> blocks = new ArrayList<>(portal.getPortalBlocks());
+		blocks.addAll(portal.getFrameBlocks());
+		return blocks;
+	}
+	
+	private static int getCellCoord(double coord) {
+		return (int) Math.floor(coord / CELL_SIZE);
+	}
+	
+	private static long getCellKey(int cellX, int cellZ) {
+		return (long) cellX << 32 | cellZ & 0xFFFFFFFFL;
+	}
+	
+	/**
+	 * A portal with its location, so the location does not need to be recreated for every distance check.
+	 */
+	private static class Entry {
+		
+		private final Portal portal;
+		private final double x;
+		private final double y;
+		private final double z;
+		
+		Entry(Portal portal) {
+			
+			Location portalLoc = portal.getLocation();
+			
+			this.portal = portal;
+			this.x = portalLoc.getX();
+			this.y = portalLoc.getY();
+			this.z = portalLoc.getZ();
+		}
+		
+		double distanceSquared(Location loc) {
+			
+			double dx = x - loc.getX();
+			double dy = y - loc.getY();
+			double dz = z - loc.getZ();
+			return dx * dx + dy * dy + dz * dz;
+		}
+	}
+	
+	private static class NearestSearch {
+		
+		private final Location loc;
+		private final boolean mustBeLinked;
+		
+		private Portal nearest;
+		private double nearestDistSquared;
+		
+		NearestSearch(Location loc, boolean mustBeLinked, double maxDistSquared) {
+			
+			this.loc = loc;
+			this.mustBeLinked = mustBeLinked;
+			this.nearestDistSquared = maxDistSquared;
+		}
+		
+		void visit(List<Entry> cell) {
+			
+			if (cell == null) {
+				return;
+			}
+			
+			for (Entry entry : cell) {
+				
+				if (mustBeLinked && !entry.portal.isLinked()) {
+					continue;
+				}
+				
+				double distSquared = entry.distanceSquared(loc);
+				
+				if (nearest == null ? distSquared <= nearestDistSquared : distSquared < nearestDistSquared) {
+					nearest = entry.portal;
+					nearestDistSquared = distSquared;
+				}
+			}
+		}
+	}
+}
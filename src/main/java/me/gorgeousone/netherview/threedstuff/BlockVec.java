@@ -100,6 +100,33 @@ public class BlockVec {
 				Math.max(v1.z, v2.z));
 	}
 	
+	/**
+	 * Packs the coordinates into one long with 26 bits for x and z and 12 bits for y (like Minecraft does).
+	 */
+	public static long toLong(int x, int y, int z) {
+		return ((long) x & 0x3FFFFFF) << 38 | ((long) z & 0x3FFFFFF) << 12 | (long) y & 0xFFF;
+	}
+	
+	public long toLong() {
+		return toLong(x, y, z);
+	}
+	
+	public static int getPackedX(long packedPos) {
+		return (int) (packedPos >> 38);
+	}
+	
+	public static int getPackedY(long packedPos) {
+		return (int) (packedPos << 52 >> 52);
+	}
+	
+	public static int getPackedZ(long packedPos) {
+		return (int) (packedPos << 26 >> 38);
+	}
+	
+	public static BlockVec fromLong(long packedPos) {
+		return new BlockVec(getPackedX(packedPos), getPackedY(packedPos), getPackedZ(packedPos));
+	}
+	
 	public Vector toVector() {
 		return new Vector(x, y, z);
 	}
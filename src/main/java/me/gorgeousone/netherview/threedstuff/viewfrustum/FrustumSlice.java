@@ -0,0 +1,161 @@
+package me.gorgeousone.netherview.threedstuff.viewfrustum;
+
+/**
+ * The blocks of one layer parallel to the near plane of a view frustum that have at least one vertex inside the frustum.
+ * The layer is described with a width and a y coordinate per block. The width is the x coordinate for portals on the x-axis
+ * and the z coordinate for portals on the z-axis. As the frustum widens from the front to the back face of the layer,
+ * the blocks are the union of two rectangles, one for the vertices of each face.
+ */
+public class FrustumSlice {
+	
+	private final int frontMinWidth;
+	private final int frontMaxWidth;
+	private final int frontMinY;
+	private final int frontMaxY;
+	
+	private final int backMinWidth;
+	private final int backMaxWidth;
+	private final int backMinY;
+	private final int backMaxY;
+	
+	/**
+	 * Creates a slice out of the inclusive block bounds of both rectangles. A rectangle with a min greater than its max is empty.
+	 */
+	public FrustumSlice(int frontMinWidth, int frontMaxWidth, int frontMinY, int frontMaxY,
+	                    int backMinWidth, int backMaxWidth, int backMinY, int backMaxY) {
+		
+		this.frontMinWidth = frontMinWidth;
+		this.frontMaxWidth = frontMaxWidth;
+		this.frontMinY = frontMinY;
+		this.frontMaxY = frontMaxY;
+		
+		this.backMinWidth = backMinWidth;
+		this.backMaxWidth = backMaxWidth;
+		this.backMinY = backMinY;
+		this.backMaxY = backMaxY;
+	}
+	
+	public boolean isEmpty() {
+		return isFrontEmpty() && isBackEmpty();
+	}
+	
+	/**
+	 * Returns the smallest width coordinate of a block in the slice. Together with the other getters this forms the
+	 * bounding rectangle of the slice.
+	 */
+	public int getMinWidth() {
+		return isFrontEmpty() ? backMinWidth : isBackEmpty() ? frontMinWidth : Math.min(frontMinWidth, backMinWidth);
+	}
+	
+	public int getMaxWidth() {
+		return isFrontEmpty() ? backMaxWidth : isBackEmpty() ? frontMaxWidth : Math.max(frontMaxWidth, backMaxWidth);
+	}
+	
+	public int getMinY() {
+		return isFrontEmpty() ? backMinY : isBackEmpty() ? frontMinY : Math.min(frontMinY, backMinY);
+	}
+	
+	public int getMaxY() {
+		return isFrontEmpty() ? backMaxY : isBackEmpty() ? frontMaxY : Math.max(frontMaxY, backMaxY);
+	}
+	
+	public boolean contains(int width, int y) {
+		return width >= frontMinWidth && width <= frontMaxWidth && y >= frontMinY && y <= frontMaxY ||
+		       width >= backMinWidth && width <= backMaxWidth && y >= backMinY && y <= backMaxY;
+	}
+	
+	/**
+	 * Returns the width ranges of the blocks of the slice in one row as {min1, max1, min2, max2}.
+	 * A range with a min greater than its max is empty. The ranges might overlap.
+	 */
+	public int[] getRowRanges(int y) {
+		
+		boolean rowInFront = y >= frontMinY && y <= frontMaxY;
+		boolean rowInBack = y >= backMinY && y <= backMaxY;
+		
+		return new int[]{
+				rowInFront ? frontMinWidth : 1, rowInFront ? frontMaxWidth : 0,
+				rowInBack ? backMinWidth : 1, rowInBack ? backMaxWidth : 0};
+	}
+	
+	/**
+	 * Returns the greatest width up to which all blocks in the row starting at the given block are part of the slice.
+	 * Returns width - 1 if the given block itself is not part of the slice.
+	 */
+	public int getCoveredUntil(int width, int y) {
+		
+		int coveredUntil = width - 1;
+		boolean rowInFront = y >= frontMinY && y <= frontMaxY;
+		boolean rowInBack = y >= backMinY && y <= backMaxY;
+		
+		//checking twice lets the ranges extend each other in both orders
+		for (int i = 0; i < 2; i++) {
+			
+			if (rowInFront && coveredUntil + 1 >= frontMinWidth && coveredUntil + 1 <= frontMaxWidth) {
+				coveredUntil = frontMaxWidth;
+			}
+			
+			if (rowInBack && coveredUntil + 1 >= backMinWidth && coveredUntil + 1 <= backMaxWidth) {
+				coveredUntil = backMaxWidth;
+			}
+		}
+		
+		return coveredUntil;
+	}
+	
+	/**
+	 * Passes the width and y of the blocks inside the passed inclusive bounds that are part of this slice but not of the excluded one to the consumer.
+	 * Rows are skipped range wise where both slices overlap.
+	 */
+	public void forEachNotIn(FrustumSlice excludedSlice, int minWidth, int maxWidth, int minY, int maxY, BlockConsumer consumer) {
+		
+		if (isEmpty()) {
+			return;
+		}
+		
+		int fromY = Math.max(minY, getMinY());
+		int toY = Math.min(maxY, getMaxY());
+		
+		for (int y = fromY; y <= toY; y++) {
+			
+			int[] ranges = getRowRanges(y);
+			
+			for (int i = 0; i < ranges.length; i += 2) {
+				
+				int rangeMin = Math.max(minWidth, ranges[i]);
+				int rangeMax = Math.min(maxWidth, ranges[i + 1]);
+				
+				for (int width = rangeMin; width <= rangeMax; width++) {
+					
+					//skip the part of the second range that was already covered by the first range
+					if (i == 2 && width >= ranges[0] && width <= ranges[1]) {
+						width = ranges[1];
+						continue;
+					}
+					
+					int excludedUntil = excludedSlice.getCoveredUntil(width, y);
+					
+					if (excludedUntil >= width) {
+						width = excludedUntil;
+						continue;
+					}
+					
+					consumer.accept(width, y);
+				}
+			}
+		}
+	}
+	
+	@FunctionalInterface
+	public interface BlockConsumer {
+		void accept(int width, int y);
+	}
+	
+	private boolean isFrontEmpty() {
+		return frontMinWidth > frontMaxWidth || frontMinY > frontMaxY;
+	}
+	
+	private boolean isBackEmpty() {
+		return backMinWidth > backMaxWidth || backMinY > backMaxY;
+	}
+}
@@ -1,22 +1,64 @@
 package me.gorgeousone.netherview.threedstuff.viewfrustum;
 
+import me.gorgeousone.netherview.blocktype.Axis;
 import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
 import me.gorgeousone.netherview.threedstuff.Line;
 import me.gorgeousone.netherview.threedstuff.Plane;
 import org.bukkit.util.Vector;
 
+/**
+ * A frustum with its tip in the view point of a player, cut off by a near plane (the visible part of a portal).
+ * The frustum is bounded by 4 side planes through the view point and the edges of the near plane rectangle and the near plane itself.
+ * The planes are stored as primitive coefficients a, b, c, d with a point being inside a plane if a*x + b*y + c*z + d >= 0.
+ */
 public class ViewFrustum {
 	
+	private static final int PLANE_COUNT = 6;
+	
+	//allows points lying exactly on the bounds despite rounding errors
+	private static final double EPSILON = 1e-9;
+	
+	//how far the bounding box reaches behind the far plane
+	private static final double BOUNDING_BOX_DEPTH_MARGIN = 2;
+	
 	private Vector viewPoint;
 	private AxisAlignedRect nearPlaneRect;
 	private AxisAlignedRect farPlaneRect;
 	
+	private final double[] planeA = new double[PLANE_COUNT];
+	private final double[] planeB = new double[PLANE_COUNT];
+	private final double[] planeC = new double[PLANE_COUNT];
+	private final double[] planeD = new double[PLANE_COUNT];
+	
+	//the view point and near plane bounds split into width (x or z), height and depth (z or x) coordinates for slicing the frustum
+	private double viewWidth;
+	private double viewY;
+	private double viewDepth;
+	private double nearMinWidth;
+	private double nearMaxWidth;
+	private double nearMinY;
+	private double nearMaxY;
+	private double nearPlaneDist;
+	private double farPlaneDist;
+	private int depthDirection;
+	
+	//the bounding box of the near and far plane, which contains the whole frustum
+	private double minX;
+	private double minY;
+	private double minZ;
+	private double maxX;
+	private double maxY;
+	private double maxZ;
+	
 	public ViewFrustum(Vector viewPoint, AxisAlignedRect nearPlane, double frustumLength) {
 		
 		this.viewPoint = viewPoint;
 		this.nearPlaneRect = nearPlane;
 		
 		createFarPlaneRect(frustumLength);
+		createBoundingBox(frustumLength);
+		createBoundingPlanes(frustumLength);
+		createSliceBounds(frustumLength);
 	}
 	
 	public AxisAlignedRect getNearPlaneRect() {
@@ -28,23 +70,50 @@ public class ViewFrustum {
 	}
 	
 	public boolean contains(Vector point) {
+		return contains(point.getX(), point.getY(), point.getZ());
+	}
+	
+	/**
+	 * Returns true if the point is located between the near and the far plane (seen from the view point) and inside all 4 side planes.
+	 */
+	public boolean contains(double x, double y, double z) {
 		
-		DefinedLine lineOfView = new DefinedLine(viewPoint, point);
-		Vector pointInNearPlane = nearPlaneRect.getPlane().getIntersection(lineOfView);
+		for (int i = 0; i < PLANE_COUNT; i++) {
+			if (planeA[i] * x + planeB[i] * y + planeC[i] * z + planeD[i] < -EPSILON) {
+				return false;
+			}
+		}
 		
-		return pointInNearPlane != null && nearPlaneRect.contains(pointInNearPlane);
+		return true;
+	}
+	
+	/**
+	 * Returns false if the block at the given position lies outside the bounding box of the frustum and therefore cannot intersect it.
+	 * This check is a lot cheaper than containsBlock().
+	 */
+	public boolean mayContainBlock(int blockX, int blockY, int blockZ) {
+		return blockX + 1 >= minX - EPSILON && blockX <= maxX + EPSILON &&
+		       blockY + 1 >= minY - EPSILON && blockY <= maxY + EPSILON &&
+		       blockZ + 1 >= minZ - EPSILON && blockZ <= maxZ + EPSILON;
 	}
 	
 	/**
 	 * Returns true if any vertex of the block at the given position intersects the frustum
 	 */
 	public boolean containsBlock(Vector blockPos) {
+		return containsBlock(blockPos.getBlockX(), blockPos.getBlockY(), blockPos.getBlockZ());
+	}
+	
+	/**
+	 * Returns true if any vertex of the block at the given position intersects the frustum
+	 */
+	public boolean containsBlock(int blockX, int blockY, int blockZ) {
 		
 		for (int dx = 0; dx <= 1; dx++) {
 			for (int dy = 0; dy <= 1; dy++) {
 				for (int dz = 0; dz <= 1; dz++) {
 					
-					if (contains(blockPos.clone().add(new Vector(dy, dy, dz)))) {
+					if (contains(blockX + dx, blockY + dy, blockZ + dz)) {
 						return true;
 					}
 				}
@@ -54,8 +123,143 @@ public class ViewFrustum {
 		return false;
 	}
 	
+	/**
+	 * Returns the blocks in a layer of blocks parallel to the near plane which have at least one vertex inside the frustum.
+	 *
+	 * @param blockDepth the z coordinate of the layer for portals on the x-axis or the x coordinate for portals on the z-axis
+	 */
+	public FrustumSlice getSlice(int blockDepth) {
+		
+		int[] front = getBlockRect(getVertexRect(blockDepth));
+		int[] back = getBlockRect(getVertexRect(blockDepth + 1));
+		
+		return new FrustumSlice(
+				front[0], front[1], front[2], front[3],
+				back[0], back[1], back[2], back[3]);
+	}
+	
+	/**
+	 * Returns the inclusive bounds of the blocks touching any of the vertices (integer points) inside the passed rectangle.
+	 */
+	private int[] getBlockRect(double[] vertexRect) {
+		
+		int minWidth = (int) Math.ceil(vertexRect[0] - EPSILON);
+		int maxWidth = (int) Math.floor(vertexRect[1] + EPSILON);
+		int minY = (int) Math.ceil(vertexRect[2] - EPSILON);
+		int maxY = (int) Math.floor(vertexRect[3] + EPSILON);
+		
+		if (minWidth > maxWidth || minY > maxY) {
+			return new int[]{1, 0, 1, 0};
+		}
+		
+		//a block touches a vertex if the vertex lies on its min or max side
+		return new int[]{minWidth - 1, maxWidth, minY - 1, maxY};
+	}
+	
+	/**
+	 * Returns min width, max width, min y and max y of the cross-section of the frustum at the given depth.
+	 * If the depth lies in front of the near plane or behind the far plane an empty rectangle is returned.
+	 */
+	private double[] getVertexRect(int depth) {
+		
+		double distToViewPoint = (depth - viewDepth) * depthDirection;
+		
+		//a view point inside the near plane does not produce a usable frustum
+		if (nearPlaneDist < EPSILON || distToViewPoint < nearPlaneDist - EPSILON || distToViewPoint > farPlaneDist + EPSILON) {
+			return new double[]{1, 0, 1, 0};
+		}
+		
+		double scale = distToViewPoint / nearPlaneDist;
+		
+		return new double[]{
+				viewWidth + (nearMinWidth - viewWidth) * scale,
+				viewWidth + (nearMaxWidth - viewWidth) * scale,
+				viewY + (nearMinY - viewY) * scale,
+				viewY + (nearMaxY - viewY) * scale};
+	}
+	
+	private void createSliceBounds(double frustumLength) {
+		
+		boolean isAxisX = nearPlaneRect.getAxis() == Axis.X;
+		Vector min = nearPlaneRect.getMin();
+		Vector max = nearPlaneRect.getMax();
+		
+		viewWidth = isAxisX ? viewPoint.getX() : viewPoint.getZ();
+		viewY = viewPoint.getY();
+		viewDepth = isAxisX ? viewPoint.getZ() : viewPoint.getX();
+		
+		nearMinWidth = isAxisX ? min.getX() : min.getZ();
+		nearMaxWidth = isAxisX ? max.getX() : max.getZ();
+		nearMinY = min.getY();
+		nearMaxY = max.getY();
+		
+		double nearPlaneDepth = isAxisX ? min.getZ() : min.getX();
+		nearPlaneDist = Math.abs(nearPlaneDepth - viewDepth);
+		farPlaneDist = nearPlaneDist + frustumLength;
+		depthDirection = nearPlaneDepth > viewDepth ? 1 : -1;
+	}
+	
+	private void createBoundingPlanes(double frustumLength) {
+		
+		Vector min = nearPlaneRect.getMin();
+		Vector max = nearPlaneRect.getMax();
+		Vector center = min.clone().add(max).multiply(0.5);
+		
+		//the 4 corners of the near plane rectangle in circular order
+		Vector[] corners = {
+				min,
+				new Vector(max.getX(), min.getY(), max.getZ()),
+				max,
+				new Vector(min.getX(), max.getY(), min.getZ())};
+		
+		//a point a little further away from the view point than the near plane center, which has to be inside of all planes
+		Vector insidePoint = center.clone().multiply(2).subtract(viewPoint);
+		
+		for (int i = 0; i < 4; i++) {
+			
+			Vector edgeStart = corners[i].clone().subtract(viewPoint);
+			Vector edgeEnd = corners[(i + 1) % 4].clone().subtract(viewPoint);
+			setPlane(i, edgeStart.crossProduct(edgeEnd), viewPoint, insidePoint);
+		}
+		
+		setPlane(4, nearPlaneRect.getNormal(), center, insidePoint);
+		//the near plane center lies inside of the far plane
+		setPlane(5, nearPlaneRect.getNormal(), getFarRectCorners(frustumLength)[0], center);
+	}
+	
+	/**
+	 * Stores the plane with the given normal through the given point, facing towards the inside point.
+	 */
+	private void setPlane(int index, Vector normal, Vector pointInPlane, Vector insidePoint) {
+		
+		if (normal.clone().dot(insidePoint.clone().subtract(pointInPlane)) < 0) {
+			normal.multiply(-1);
+		}
+		
+		planeA[index] = normal.getX();
+		planeB[index] = normal.getY();
+		planeC[index] = normal.getZ();
+		planeD[index] = -normal.dot(pointInPlane);
+	}
+	
 	private void createFarPlaneRect(double frustumLength) {
 		
+		Vector[] farRectCorners = getFarRectCorners(frustumLength);
+		Vector farRectMin = farRectCorners[0];
+		Vector farRectMax = farRectCorners[1];
+		
+		Vector rectDiameter = farRectMax.clone().subtract(farRectMin);
+		double rectHeight = rectDiameter.getY();
+		double rectWidth = rectDiameter.setY(0).length();
+		
+		farPlaneRect = new AxisAlignedRect(nearPlaneRect.getAxis(), farRectMin, rectWidth, rectHeight);
+	}
+	
+	/**
+	 * Returns the projections of the min and max vertex of the near plane onto a far plane in the passed distance to the near plane.
+	 */
+	private Vector[] getFarRectCorners(double frustumLength) {
+		
 		Vector nearPlaneOrigin = nearPlaneRect.getMin();
 		Vector nearPlaneNormal = nearPlaneRect.getNormal();
 		Vector viewPointFacing = viewPoint.clone().subtract(nearPlaneOrigin);
@@ -73,13 +277,25 @@ public class ViewFrustum {
 		Line farRectMinLine = new Line(viewPoint, nearPlaneOrigin);
 		Line farRectMaxLine = new Line(viewPoint, nearPlaneRect.getMax());
 		
-		Vector farRectMin = farPlane.getIntersection(farRectMinLine);
-		Vector farRectMax = farPlane.getIntersection(farRectMaxLine);
+		return new Vector[]{farPlane.getIntersection(farRectMinLine), farPlane.getIntersection(farRectMaxLine)};
+	}
+	
+	/**
+	 * Creates a bounding box around the frustum up to a bit behind the far plane, so blocks touching the far plane are surely inside.
+	 */
+	private void createBoundingBox(double frustumLength) {
 		
-		Vector rectDiameter = farRectMax.clone().subtract(farRectMin);
-		double rectHeight = rectDiameter.getY();
-		double rectWidth = rectDiameter.setY(0).length();
+		Vector nearMin = nearPlaneRect.getMin();
+		Vector nearMax = nearPlaneRect.getMax();
+		Vector[] farCorners = getFarRectCorners(frustumLength + BOUNDING_BOX_DEPTH_MARGIN);
+		Vector farMin = farCorners[0];
+		Vector farMax = farCorners[1];
 		
-		farPlaneRect = new AxisAlignedRect(nearPlaneRect.getAxis(), farRectMin, rectWidth, rectHeight);
+		minX = Math.min(Math.min(nearMin.getX(), nearMax.getX()), Math.min(farMin.getX(), farMax.getX()));
+		minY = Math.min(Math.min(nearMin.getY(), nearMax.getY()), Math.min(farMin.getY(), farMax.getY()));
+		minZ = Math.min(Math.min(nearMin.getZ(), nearMax.getZ()), Math.min(farMin.getZ(), farMax.getZ()));
+		maxX = Math.max(Math.max(nearMin.getX(), nearMax.getX()), Math.max(farMin.getX(), farMax.getX()));
+		maxY = Math.max(Math.max(nearMin.getY(), nearMax.getY()), Math.max(farMin.getY(), farMax.getY()));
+		maxZ = Math.max(Math.max(nearMin.getZ(), nearMax.getZ()), Math.max(farMin.getZ(), farMax.getZ()));
 	}
 }
\ No newline at end of file
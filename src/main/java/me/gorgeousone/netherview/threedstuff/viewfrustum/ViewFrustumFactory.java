@@ -87,7 +87,8 @@ public final class ViewFrustumFactory {
 		double rectWidth = portalAxis == Axis.X ? viewingRectSize.getX() : viewingRectSize.getZ();
 		double rectHeight = viewingRectSize.getY();
 		
-		if (rectWidth < 0) {
+		//the portal frame blocks the whole view
+		if (rectWidth < 0 || rectHeight < 0) {
 			return null;
 		}
 		
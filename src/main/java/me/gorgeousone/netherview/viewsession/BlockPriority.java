@@ -0,0 +1,61 @@
+package me.gorgeousone.netherview.viewsession;
+
+import me.gorgeousone.netherview.blocktype.Axis;
+import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
+import org.bukkit.util.Vector;
+
+/**
+ * Rates how urgently a fake block should be displayed to a player. Blocks close to the portal plane and close to the
+ * look direction of the player get lower values and are displayed first.
+ */
+public class BlockPriority {
+	
+	//how many blocks of distance to the portal plane are as bad as looking 90° away from a block
+	private static final double ANGLE_WEIGHT = 8;
+	
+	private double eyeX;
+	private double eyeY;
+	private double eyeZ;
+	private double lookX;
+	private double lookY;
+	private double lookZ;
+	
+	private boolean isAxisX;
+	private double portalDepth;
+	
+	public BlockPriority(Vector eyePos, Vector lookDirection, AxisAlignedRect portalRect) {
+		
+		Vector look = lookDirection.clone().normalize();
+		
+		this.eyeX = eyePos.getX();
+		this.eyeY = eyePos.getY();
+		this.eyeZ = eyePos.getZ();
+		this.lookX = look.getX();
+		this.lookY = look.getY();
+		this.lookZ = look.getZ();
+		
+		this.isAxisX = portalRect.getAxis() == Axis.X;
+		this.portalDepth = isAxisX ? portalRect.getMin().getZ() : portalRect.getMin().getX();
+	}
+	
+	/**
+	 * Returns a value of at least 0 for the block at the passed position, the lower the more urgent.
+	 */
+	public double get(int x, int y, int z) {
+		
+		double centerX = x + 0.5;
+		double centerY = y + 0.5;
+		double centerZ = z + 0.5;
+		
+		double depthDist = Math.abs((isAxisX ? centerZ : centerX) - portalDepth);
+		
+		double dx = centerX - eyeX;
+		double dy = centerY - eyeY;
+		double dz = centerZ - eyeZ;
+		double dist = Math.sqrt(dx * dx + dy * dy + dz * dz);
+		
+		//0 for blocks in the center of the view, 1 for blocks at the edge and 2 for blocks behind the player
+		double angleFactor = dist == 0 ? 0 : 1 - (dx * lookX + dy * lookY + dz * lookZ) / dist;
+		return depthDist + ANGLE_WEIGHT * angleFactor;
+	}
+}
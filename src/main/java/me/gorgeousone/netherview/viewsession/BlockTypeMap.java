@@ -0,0 +1,297 @@
+package me.gorgeousone.netherview.viewsession;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+
+import java.util.Arrays;
+
+/**
+ * A map from block positions to block types without any boxing. Positions are stored as packed longs (see BlockVec.toLong())
+ * and block types as their interned ids in an open addressing hash table with linear probing.
+ * Both are stored next to each other in one array, so a table swapped while growing is never read half updated.
+ */
+public class BlockTypeMap {
+	
+	private static final int MIN_CAPACITY = 16;
+	private static final int LOOKUP_COST = 4;
+	
+	//each slot consists of a packed position followed by a block type id. Slots with the id 0 are empty
+	private long[] table;
+	private int size;
+	
+	//bounding box of all positions ever put since the last clear. It does not shrink when entries are removed
+	private int minX = Integer.MAX_VALUE;
+	private int minY = Integer.MAX_VALUE;
+	private int minZ = Integer.MAX_VALUE;
+	private int maxX = Integer.MIN_VALUE;
+	private int maxY = Integer.MIN_VALUE;
+	private int maxZ = Integer.MIN_VALUE;
+	
+	public BlockTypeMap() {
+		this(MIN_CAPACITY);
+	}
+	
+	/**
+	 * Creates a map that can hold the passed count of entries before growing.
+	 */
+	public BlockTypeMap(int expectedSize) {
+		
+		int capacity = MIN_CAPACITY;
+		
+		while (capacity * 3 / 4 < expectedSize) {
+			capacity *= 2;
+		}
+		
+		table = new long[2 * capacity];
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public boolean isEmpty() {
+		return size == 0;
+	}
+	
+	/**
+	 * Returns false if the position is outside the bounding box of the map and therefore definitely not contained.
+	 * This check is a lot cheaper than a lookup in the table.
+	 */
+	public boolean mayContain(int x, int y, int z) {
+		return x >= minX && x <= maxX &&
+		       y >= minY && y <= maxY &&
+		       z >= minZ && z <= maxZ;
+	}
+	
+	/**
+	 * Returns false if the chunk does not intersect with the bounding box of the map and therefore no position in it is contained.
+	 */
+	public boolean mayContainChunk(int chunkX, int chunkZ) {
+		return chunkX >= minX >> 4 && chunkX <= maxX >> 4 &&
+		       chunkZ >= minZ >> 4 && chunkZ <= maxZ >> 4;
+	}
+	
+	public boolean containsKey(long packedPos) {
+		
+		long[] table = this.table;
+		return table[findSlot(table, packedPos) + 1] != 0;
+	}
+	
+	public boolean containsKey(BlockVec blockPos) {
+		return containsKey(blockPos.toLong());
+	}
+	
+	/**
+	 * Returns the block type stored for the position or null if there is none.
+	 */
+	public BlockType get(long packedPos) {
+		
+		long[] table = this.table;
+		return BlockType.byId((int) table[findSlot(table, packedPos) + 1]);
+	}
+	
+	public BlockType get(BlockVec blockPos) {
+		return get(blockPos.toLong());
+	}
+	
+	/**
+	 * Stores the block type for the position, replacing any previous one.
+	 *
+	 * @param blockType an interned block type that is not null
+	 */
+	public void put(long packedPos, BlockType blockType) {
+		
+		int slot = findSlot(table, packedPos);
+		
+		if (table[slot + 1] == 0) {
+			
+			if ((size + 1) * 4 > getCapacity() * 3) {
+				grow();
+				slot = findSlot(table, packedPos);
+			}
+			
+			table[slot] = packedPos;
+			size++;
+			expandBounds(packedPos);
+		}
+		
+		table[slot + 1] = blockType.getId();
+	}
+	
+	public void put(BlockVec blockPos, BlockType blockType) {
+		put(blockPos.toLong(), blockType);
+	}
+	
+	public void putAll(BlockTypeMap other) {
+		other.forEach(this::put);
+	}
+	
+	/**
+	 * Removes the block type stored for the position and returns it. Returns null if there was none.
+	 */
+	public BlockType remove(long packedPos) {
+		
+		int slot = findSlot(table, packedPos);
+		int typeId = (int) table[slot + 1];
+		
+		if (typeId == 0) {
+			return null;
+		}
+		
+		table[slot + 1] = 0;
+		size--;
+		
+		//move following entries of the probe sequence back into the gap, so no lookups are interrupted by it
+		int mask = table.length - 1;
+		int gap = slot;
+		int next = (slot + 2) & mask;
+		
+		while (table[next + 1] != 0) {
+			
+			int home = getHomeSlot(table, table[next]);
+			
+			//the entry may only be moved if the gap lies between its home slot and its current slot
+			if (((next - home) & mask) >= ((next - gap) & mask)) {
+				
+				table[gap] = table[next];
+				table[gap + 1] = table[next + 1];
+				table[next + 1] = 0;
+				gap = next;
+			}
+			
+			next = (next + 2) & mask;
+		}
+		
+		return BlockType.byId(typeId);
+	}
+	
+	public BlockType remove(BlockVec blockPos) {
+		return remove(blockPos.toLong());
+	}
+	
+	public void clear() {
+		
+		Arrays.fill(table, 0);
+		size = 0;
+		
+		minX = minY = minZ = Integer.MAX_VALUE;
+		maxX = maxY = maxZ = Integer.MIN_VALUE;
+	}
+	
+	/**
+	 * Passes every entry of the map to the visitor. The map must not be changed while iterating.
+	 */
+	public void forEach(EntryVisitor visitor) {
+		
+		for (int slot = 0; slot < table.length; slot += 2) {
+			if (table[slot + 1] != 0) {
+				visitor.visit(table[slot], BlockType.byId((int) table[slot + 1]));
+			}
+		}
+	}
+	
+	/**
+	 * Passes every entry inside the chunk column to the visitor. Depending on what is less work, either the positions of the chunk
+	 * inside the bounding box of the map are looked up or the whole table is scanned. The map must not be changed while iterating.
+	 */
+	public void forEachInChunk(int chunkX, int chunkZ, EntryVisitor visitor) {
+		
+		if (isEmpty() || !mayContainChunk(chunkX, chunkZ)) {
+			return;
+		}
+		
+		int fromX = Math.max(minX, chunkX << 4);
+		int toX = Math.min(maxX, chunkX << 4 | 15);
+		int fromZ = Math.max(minZ, chunkZ << 4);
+		int toZ = Math.min(maxZ, chunkZ << 4 | 15);
+		long boxVolume = (long) (toX - fromX + 1) * (maxY - minY + 1) * (toZ - fromZ + 1);
+		
+		//a lookup costs a few times more than checking a slot while scanning
+		if (boxVolume * LOOKUP_COST > getCapacity()) {
+			
+			forEach((packedPos, blockType) -> {
+				if (BlockVec.getPackedX(packedPos) >> 4 == chunkX && BlockVec.getPackedZ(packedPos) >> 4 == chunkZ) {
+					visitor.visit(packedPos, blockType);
+				}
+			});
+			
+			return;
+		}
+		
+		for (int x = fromX; x <= toX; x++) {
+			for (int y = minY; y <= maxY; y++) {
+				for (int z = fromZ; z <= toZ; z++) {
+					
+					long packedPos = BlockVec.toLong(x, y, z);
+					BlockType blockType = get(packedPos);
+					
+					if (blockType != null) {
+						visitor.visit(packedPos, blockType);
+					}
+				}
+			}
+		}
+	}
+	
+	@FunctionalInterface
+	public interface EntryVisitor {
+		void visit(long packedPos, BlockType blockType);
+	}
+	
+	private void expandBounds(long packedPos) {
+		
+		int x = BlockVec.getPackedX(packedPos);
+		int y = BlockVec.getPackedY(packedPos);
+		int z = BlockVec.getPackedZ(packedPos);
+		
+		minX = Math.min(minX, x);
+		minY = Math.min(minY, y);
+		minZ = Math.min(minZ, z);
+		maxX = Math.max(maxX, x);
+		maxY = Math.max(maxY, y);
+		maxZ = Math.max(maxZ, z);
+	}
+	
+	private int getCapacity() {
+		return table.length / 2;
+	}
+	
+	/**
+	 * Returns the array index of the slot containing the position or of the empty slot where it would be inserted.
+	 */
+	private static int findSlot(long[] table, long packedPos) {
+		
+		int mask = table.length - 1;
+		int slot = getHomeSlot(table, packedPos);
+		
+		while (table[slot + 1] != 0 && table[slot] != packedPos) {
+			slot = (slot + 2) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private static int getHomeSlot(long[] table, long packedPos) {
+		
+		//mixes the bits of all 3 coordinates into the lower bits
+		long hash = packedPos * 0x9E3779B97F4A7C15L;
+		return ((int) (hash ^ hash >>> 32) << 1) & (table.length - 1);
+	}
+	
+	private void grow() {
+		
+		long[] oldTable = table;
+		long[] newTable = new long[oldTable.length * 2];
+		
+		for (int slot = 0; slot < oldTable.length; slot += 2) {
+			if (oldTable[slot + 1] != 0) {
+				
+				int newSlot = findSlot(newTable, oldTable[slot]);
+				newTable[newSlot] = oldTable[slot];
+				newTable[newSlot + 1] = oldTable[slot + 1];
+			}
+		}
+		
+		table = newTable;
+	}
+}
@@ -0,0 +1,410 @@
+package me.gorgeousone.netherview.viewsession;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Patches the fake blocks of a view session into the section data of a chunk packet, so a chunk resent by the server keeps showing the projection.
+ * Only sections containing fake blocks are decoded and encoded again, all other sections are copied as they are.
+ * The data is expected in the format of 1.14 and 1.15: each section consists of its count of non air blocks, the bits per block,
+ * an optional palette and the block ids packed into longs, where one id can be split between two longs.
+ */
+public class ChunkDataPatcher {
+	
+	private static final int SECTION_COUNT = 16;
+	private static final int SECTION_VOLUME = 4096;
+	private static final int MIN_BITS_PER_BLOCK = 4;
+	private static final int MAX_PALETTE_BITS_PER_BLOCK = 8;
+	
+	private final BlockIdLookup idLookup;
+	private final int globalBitsPerBlock;
+	private final int[] airIds;
+	
+	/**
+	 * @param globalBitsPerBlock count of bits used for block ids of sections without palette
+	 * @param airIds             global ids of all air block states, the first one is used to fill sections that were not sent
+	 */
+	public ChunkDataPatcher(BlockIdLookup idLookup, int globalBitsPerBlock, int... airIds) {
+		
+		if (airIds.length == 0) {
+			throw new IllegalArgumentException("At least one air block id is required");
+		}
+		
+		this.idLookup = idLookup;
+		this.globalBitsPerBlock = globalBitsPerBlock;
+		this.airIds = airIds;
+	}
+	
+	/**
+	 * Returns the chunk data with the fake blocks of the view session patched in or null if the chunk contains none of them.
+	 *
+	 * @param sectionMask bit mask of the sections contained in the data
+	 * @param isFullChunk true if the client replaces the whole chunk, so missing sections are empty
+	 * @throws IllegalArgumentException if the chunk data cannot be read
+	 */
+	public PatchedChunk patch(int chunkX, int chunkZ, int sectionMask, boolean isFullChunk, byte[] data, BlockTypeMap viewSession) {
+		
+		int[][] sectionPatches = collectPatches(chunkX, chunkZ, viewSession);
+		
+		if (sectionPatches == null) {
+			return null;
+		}
+		
+		int patchedSectionCount = 0;
+		
+		for (int[] patches : sectionPatches) {
+			if (patches != null) {
+				patchedSectionCount++;
+			}
+		}
+		
+		ByteBuffer in = ByteBuffer.wrap(data);
+		ByteBuffer out = ByteBuffer.allocate(data.length + patchedSectionCount * getMaxSectionSize());
+		int patchedMask = sectionMask;
+		
+		try {
+			for (int sectionY = 0; sectionY < SECTION_COUNT; sectionY++) {
+				
+				int[] patches = sectionPatches[sectionY];
+				
+				if ((sectionMask & 1 << sectionY) != 0) {
+					
+					int sectionStart = in.position();
+					
+					if (patches == null) {
+						skipSection(in);
+						out.put(data, sectionStart, in.position() - sectionStart);
+						continue;
+					}
+					
+					int[] blockIds = readSection(in);
+					applyPatches(blockIds, patches);
+					writeSection(out, blockIds);
+					
+				} else if (isFullChunk && patches != null) {
+					
+					//sections left out of full chunks are empty. Adding one to the mask is only possible because since 1.14 the chunk packet
+					//does not contain any light data for its sections, the light is sent in a separate packet independent of the section mask
+					int[] blockIds = new int[SECTION_VOLUME];
+					Arrays.fill(blockIds, airIds[0]);
+					applyPatches(blockIds, patches);
+					writeSection(out, blockIds);
+					patchedMask |= 1 << sectionY;
+				}
+			}
+			
+			//e.g. biomes in 1.14
+			out.put(data, in.position(), data.length - in.position());
+			
+		} catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Chunk data of chunk " + chunkX + ", " + chunkZ + " could not be read", e);
+		}
+		
+		return new PatchedChunk(Arrays.copyOf(out.array(), out.position()), patchedMask);
+	}
+	
+	/**
+	 * Returns the global ids of the fake blocks inside the chunk, each section as an array at its y index with -1 for no fake block.
+	 * Returns null if there are no fake blocks in the chunk.
+	 */
+	private int[][] collectPatches(int chunkX, int chunkZ, BlockTypeMap viewSession) {
+		
+		if (!viewSession.mayContainChunk(chunkX, chunkZ)) {
+			return null;
+		}
+		
+		int[][] sectionPatches = new int[SECTION_COUNT][];
+		boolean[] hasPatches = new boolean[1];
+		
+		viewSession.forEachInChunk(chunkX, chunkZ, (packedPos, blockType) -> {
+			
+			int x = BlockVec.getPackedX(packedPos);
+			int y = BlockVec.getPackedY(packedPos);
+			int z = BlockVec.getPackedZ(packedPos);
+			
+			if (y < 0 || y >= SECTION_COUNT * 16) {
+				return;
+			}
+			
+			int globalId = idLookup.getGlobalId(blockType);
+			
+			if (globalId < 0) {
+				return;
+			}
+			
+			int[] patches = sectionPatches[y >> 4];
+			
+			if (patches == null) {
+				patches = new int[SECTION_VOLUME];
+				Arrays.fill(patches, -1);
+				sectionPatches[y >> 4] = patches;
+			}
+			
+			patches[getBlockIndex(x, y, z)] = globalId;
+			hasPatches[0] = true;
+		});
+		
+		return hasPatches[0] ? sectionPatches : null;
+	}
+	
+	private static int getBlockIndex(int x, int y, int z) {
+		return (y & 15) << 8 | (z & 15) << 4 | x & 15;
+	}
+	
+	private static void applyPatches(int[] blockIds, int[] patches) {
+		
+		for (int i = 0; i < SECTION_VOLUME; i++) {
+			if (patches[i] != -1) {
+				blockIds[i] = patches[i];
+			}
+		}
+	}
+	
+	private static void skipSection(ByteBuffer in) {
+		
+		in.getShort();
+		int bitsPerBlock = in.get();
+		
+		if (bitsPerBlock <= MAX_PALETTE_BITS_PER_BLOCK) {
+			
+			int paletteLength = readVarInt(in);
+			
+			for (int i = 0; i < paletteLength; i++) {
+				readVarInt(in);
+			}
+		}
+		
+		int dataLength = readVarInt(in);
+		in.position(in.position() + dataLength * 8);
+	}
+	
+	/**
+	 * Reads a section and returns the global ids of all its blocks.
+	 */
+	private static int[] readSection(ByteBuffer in) {
+		
+		in.getShort();
+		int bitsPerBlock = in.get();
+		int[] palette = null;
+		
+		if (bitsPerBlock <= MAX_PALETTE_BITS_PER_BLOCK) {
+			
+			palette = new int[readVarInt(in)];
+			
+			for (int i = 0; i < palette.length; i++) {
+				palette[i] = readVarInt(in);
+			}
+		}
+		
+		long[] packedIds = new long[readVarInt(in)];
+		
+		for (int i = 0; i < packedIds.length; i++) {
+			packedIds[i] = in.getLong();
+		}
+		
+		int[] blockIds = new int[SECTION_VOLUME];
+		long valueMask = (1L << bitsPerBlock) - 1;
+		
+		for (int i = 0; i < SECTION_VOLUME; i++) {
+			
+			int bitIndex = i * bitsPerBlock;
+			int longIndex = bitIndex >> 6;
+			int offset = bitIndex & 63;
+			
+			long value = packedIds[longIndex] >>> offset;
+			
+			if (offset + bitsPerBlock > 64) {
+				value |= packedIds[longIndex + 1] << (64 - offset);
+			}
+			
+			int id = (int) (value & valueMask);
+			blockIds[i] = palette != null ? palette[id] : id;
+		}
+		
+		return blockIds;
+	}
+	
+	/**
+	 * Returns the count of bytes a section can take up at most when written by this patcher.
+	 */
+	private int getMaxSectionSize() {
+		
+		int paletteSize = 5 + 5 * (1 << MAX_PALETTE_BITS_PER_BLOCK);
+		int dataSize = 5 + SECTION_VOLUME * Math.max(globalBitsPerBlock, MAX_PALETTE_BITS_PER_BLOCK) / 8;
+		return 3 + paletteSize + dataSize;
+	}
+	
+	private void writeSection(ByteBuffer out, int[] blockIds) {
+		
+		int nonAirCount = 0;
+		
+		for (int globalId : blockIds) {
+			if (!isAir(globalId)) {
+				nonAirCount++;
+			}
+		}
+		
+		int[] palette = createPalette(blockIds);
+		int bitsPerBlock = palette != null ? Math.max(MIN_BITS_PER_BLOCK, 32 - Integer.numberOfLeadingZeros(palette.length - 1)) : globalBitsPerBlock;
+		
+		long[] packedIds = new long[SECTION_VOLUME * bitsPerBlock / 64];
+		
+		for (int i = 0; i < SECTION_VOLUME; i++) {
+			
+			long value = blockIds[i];
+			
+			int bitIndex = i * bitsPerBlock;
+			int longIndex = bitIndex >> 6;
+			int offset = bitIndex & 63;
+			
+			packedIds[longIndex] |= value << offset;
+			
+			if (offset + bitsPerBlock > 64) {
+				packedIds[longIndex + 1] |= value >>> (64 - offset);
+			}
+		}
+		
+		out.putShort((short) nonAirCount);
+		out.put((byte) bitsPerBlock);
+		
+		if (palette != null) {
+			
+			writeVarInt(out, palette.length);
+			
+			for (int id : palette) {
+				writeVarInt(out, id);
+			}
+		}
+		
+		writeVarInt(out, packedIds.length);
+		
+		for (long packed : packedIds) {
+			out.putLong(packed);
+		}
+	}
+	
+	/**
+	 * Returns the distinct ids in order of appearance and replaces the ids in the passed array with their palette indices.
+	 * Returns null and leaves the array unchanged if there are more distinct ids than fit into a palette.
+	 */
+	private static int[] createPalette(int[] blockIds) {
+		
+		int maxPaletteLength = 1 << MAX_PALETTE_BITS_PER_BLOCK;
+		int[] palette = new int[maxPaletteLength];
+		int paletteLength = 0;
+		
+		//a small open addressing table from ids to palette indices
+		int[] tableIds = new int[4 * maxPaletteLength];
+		int[] tableIndices = new int[tableIds.length];
+		Arrays.fill(tableIds, -1);
+		
+		for (int id : blockIds) {
+			
+			int slot = findSlot(tableIds, id);
+			
+			if (tableIds[slot] == -1) {
+				
+				if (paletteLength == maxPaletteLength) {
+					return null;
+				}
+				
+				tableIds[slot] = id;
+				tableIndices[slot] = paletteLength;
+				palette[paletteLength++] = id;
+			}
+		}
+		
+		for (int i = 0; i < SECTION_VOLUME; i++) {
+			blockIds[i] = tableIndices[findSlot(tableIds, blockIds[i])];
+		}
+		
+		return Arrays.copyOf(palette, paletteLength);
+	}
+	
+	private static int findSlot(int[] tableIds, int id) {
+		
+		int mask = tableIds.length - 1;
+		int slot = (id * 0x9E3779B9 >>> 16) & mask;
+		
+		while (tableIds[slot] != -1 && tableIds[slot] != id) {
+			slot = (slot + 1) & mask;
+		}
+		
+		return slot;
+	}
+	
+	private boolean isAir(int globalId) {
+		
+		for (int airId : airIds) {
+			if (globalId == airId) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private static int readVarInt(ByteBuffer in) {
+		
+		int value = 0;
+		int shift = 0;
+		byte current;
+		
+		do {
+			if (shift >= 35) {
+				throw new IllegalArgumentException("VarInt is too long");
+			}
+			
+			current = in.get();
+			value |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		
+		return value;
+	}
+	
+	private static void writeVarInt(ByteBuffer out, int value) {
+		
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		
+		out.put((byte) value);
+	}
+	
+	@FunctionalInterface
+	public interface BlockIdLookup {
+		
+		/**
+		 * Returns the id of the block type in the global palette of the client or -1 if it is unknown.
+		 */
+		int getGlobalId(BlockType blockType);
+	}
+	
+	/**
+	 * The patched data of a chunk together with its section mask, which might include additional sections now.
+	 */
+	public static class PatchedChunk {
+		
+		private final byte[] data;
+		private final int sectionMask;
+		
+		PatchedChunk(byte[] data, int sectionMask) {
+			this.data = data;
+			this.sectionMask = sectionMask;
+		}
+		
+		public byte[] getData() {
+			return data;
+		}
+		
+		public int getSectionMask() {
+			return sectionMask;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package me.gorgeousone.netherview.viewsession;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+
+import java.util.Arrays;
+
+/**
+ * Fake blocks of a view session that still need to be sent to the player, ordered by their BlockPriority.
+ * All pending blocks are sorted again whenever new blocks are added, so the order always fits the latest view of the player.
+ */
+public class FakeBlockQueue {
+	
+	//priorities are compared in steps of a 16th
+	private static final int PRIORITY_RESOLUTION = 16;
+	
+	private BlockTypeMap pendingBlocks;
+	private long[] order;
+	private int nextIndex;
+	
+	public FakeBlockQueue() {
+		pendingBlocks = new BlockTypeMap();
+		order = new long[0];
+	}
+	
+	public boolean isEmpty() {
+		return pendingBlocks.isEmpty();
+	}
+	
+	public int size() {
+		return pendingBlocks.size();
+	}
+	
+	/**
+	 * Adds the blocks to the queue, replacing pending block types at the same positions, and sorts all pending blocks by the passed priority.
+	 */
+	public void addAll(BlockTypeMap blocks, BlockPriority priority) {
+		
+		pendingBlocks.putAll(blocks);
+		
+		int count = pendingBlocks.size();
+		long[] positions = new long[count];
+		long[] sortKeys = new long[count];
+		int[] index = new int[1];
+		
+		pendingBlocks.forEach((packedPos, blockType) -> {
+			
+			int i = index[0]++;
+			double blockPriority = priority.get(BlockVec.getPackedX(packedPos), BlockVec.getPackedY(packedPos), BlockVec.getPackedZ(packedPos));
+			
+			//the quantized priority in the upper half and the index of the position in the lower half can be sorted together
+			positions[i] = packedPos;
+			sortKeys[i] = (long) Math.min(Integer.MAX_VALUE, blockPriority * PRIORITY_RESOLUTION) << 32 | i;
+		});
+		
+		Arrays.sort(sortKeys);
+		
+		for (int i = 0; i < count; i++) {
+			sortKeys[i] = positions[(int) sortKeys[i]];
+		}
+		
+		order = sortKeys;
+		nextIndex = 0;
+	}
+	
+	/**
+	 * Removes the positions of the passed blocks from the queue, e.g. because they are not visible anymore or were sent in another way.
+	 */
+	public void removeAll(BlockTypeMap blocks) {
+		blocks.forEach((packedPos, blockType) -> pendingBlocks.remove(packedPos));
+	}
+	
+	/**
+	 * Removes up to the passed count of the most urgent blocks from the queue and returns them.
+	 */
+	public BlockTypeMap poll(int maxCount) {
+		
+		BlockTypeMap polledBlocks = new BlockTypeMap(Math.min(maxCount, pendingBlocks.size()));
+		
+		while (polledBlocks.size() < maxCount && nextIndex < order.length) {
+			
+			long packedPos = order[nextIndex++];
+			BlockType blockType = pendingBlocks.remove(packedPos);
+			
+			if (blockType != null) {
+				polledBlocks.put(packedPos, blockType);
+			}
+		}
+		
+		return polledBlocks;
+	}
+}
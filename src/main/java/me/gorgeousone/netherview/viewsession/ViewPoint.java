@@ -0,0 +1,62 @@
+package me.gorgeousone.netherview.viewsession;
+
+import me.gorgeousone.netherview.blockcache.ProjectionCache;
+import org.bukkit.Location;
+
+/**
+ * The state a portal view of a player was last calculated for: the eye position snapped to a grid, the viewed projection with
+ * its version and the display options. If two view points are equal, the blocks displayed to the player would be (nearly) the same.
+ */
+public class ViewPoint {
+	
+	private int gridX;
+	private int gridY;
+	private int gridZ;
+	
+	private ProjectionCache projection;
+	private int projectionVersion;
+	private boolean displayFrustum;
+	private boolean hidePortalBlocks;
+	
+	/**
+	 * @param gridSize count of grid cells per block the eye position is snapped to
+	 */
+	public ViewPoint(Location eyeLoc,
+	                 int gridSize,
+	                 ProjectionCache projection,
+	                 boolean displayFrustum,
+	                 boolean hidePortalBlocks) {
+		
+		this.gridX = (int) Math.floor(eyeLoc.getX() * gridSize);
+		this.gridY = (int) Math.floor(eyeLoc.getY() * gridSize);
+		this.gridZ = (int) Math.floor(eyeLoc.getZ() * gridSize);
+		
+		this.projection = projection;
+		this.projectionVersion = projection.getVersion();
+		this.displayFrustum = displayFrustum;
+		this.hidePortalBlocks = hidePortalBlocks;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ViewPoint)) {
+			return false;
+		}
+		ViewPoint other = (ViewPoint) o;
+		return gridX == other.gridX &&
+		       gridY == other.gridY &&
+		       gridZ == other.gridZ &&
+		       projection == other.projection &&
+		       projectionVersion == other.projectionVersion &&
+		       displayFrustum == other.displayFrustum &&
+		       hidePortalBlocks == other.hidePortalBlocks;
+	}
+	
+	@Override
+	public int hashCode() {
+		return ((gridX * 31 + gridY) * 31 + gridZ) * 31 + projectionVersion;
+	}
+}
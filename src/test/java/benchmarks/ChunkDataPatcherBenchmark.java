@@ -0,0 +1,209 @@
+package benchmarks;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
+import me.gorgeousone.netherview.viewsession.ChunkDataPatcher;
+import testsupport.TestBlockType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Measures the cost of chunk packet rewriting for chunks outside of a view session and for chunks with fake blocks,
+ * compared to only copying the chunk data. Also checks that the patched data contains the fake blocks and the unchanged real blocks.
+ * Run the main method with the test classpath, it is not executed as unit test.
+ */
+public class ChunkDataPatcherBenchmark {
+	
+	private static final int GLOBAL_BITS = 14;
+	private static final int SECTION_VOLUME = 4096;
+	private static final int WARMUP_RUNS = 2000;
+	private static final int MEASURED_RUNS = 10000;
+	
+	public static void main(String[] args) throws IOException {
+		
+		Random random = new Random(0);
+		int[][] realIds = new int[16][];
+		
+		//like a typical overworld chunk, the upper sections are not sent
+		int sectionMask = 0xFF;
+		
+		for (int sectionY = 0; sectionY < 8; sectionY++) {
+			
+			realIds[sectionY] = new int[SECTION_VOLUME];
+			
+			for (int i = 0; i < SECTION_VOLUME; i++) {
+				realIds[sectionY][i] = 1 + random.nextInt(12);
+			}
+		}
+		
+		byte[] chunkData = encodeChunk(realIds, sectionMask);
+		
+		//fake blocks of a projection reaching from section 3 into the empty section 8, with too many block types for a palette in most sections
+		BlockTypeMap viewSession = new BlockTypeMap();
+		
+		for (int x = 2; x < 14; x++) {
+			for (int y = 60; y < 140; y++) {
+				for (int z = 4; z < 8; z++) {
+					viewSession.put(BlockVec.toLong(x, y, z), TestBlockType.of(100 + random.nextInt(300) * 37));
+				}
+			}
+		}
+		
+		ChunkDataPatcher patcher = new ChunkDataPatcher(TestBlockType::getGlobalId, GLOBAL_BITS, 0);
+		ChunkDataPatcher.PatchedChunk patchedChunk = patcher.patch(0, 0, sectionMask, true, chunkData, viewSession);
+		
+		System.out.println("blocks with wrong ids: " + countMismatches(patchedChunk, realIds, viewSession));
+		
+		measure("copying chunk data", () -> chunkData.clone());
+		measure("chunk outside of session", () -> {
+			if (viewSession.mayContainChunk(5, 5)) {
+				patcher.patch(5, 5, sectionMask, true, chunkData, viewSession);
+			}
+		});
+		measure("chunk with fake blocks", () -> patcher.patch(0, 0, sectionMask, true, chunkData, viewSession));
+	}
+	
+	private static void measure(String name, Runnable task) {
+		
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			task.run();
+		}
+		
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			task.run();
+		}
+		
+		double avgMicros = (System.nanoTime() - start) / 1e3 / MEASURED_RUNS;
+		System.out.printf("%-25s %.3f us per chunk%n", name + ":", avgMicros);
+	}
+	
+	private static int countMismatches(ChunkDataPatcher.PatchedChunk patchedChunk, int[][] realIds, BlockTypeMap viewSession) {
+		
+		ByteBuffer in = ByteBuffer.wrap(patchedChunk.getData());
+		int mismatches = 0;
+		
+		for (int sectionY = 0; sectionY < 16; sectionY++) {
+			
+			if ((patchedChunk.getSectionMask() & 1 << sectionY) == 0) {
+				continue;
+			}
+			
+			int[] ids = decodeSection(in);
+			
+			for (int i = 0; i < SECTION_VOLUME; i++) {
+				
+				int x = i & 15;
+				int y = sectionY << 4 | i >> 8;
+				int z = i >> 4 & 15;
+				
+				BlockType fakeBlock = viewSession.get(BlockVec.toLong(x, y, z));
+				int expectedId = fakeBlock != null ? TestBlockType.getGlobalId(fakeBlock) : realIds[sectionY] != null ? realIds[sectionY][i] : 0;
+				
+				if (ids[i] != expectedId) {
+					mismatches++;
+				}
+			}
+		}
+		
+		return mismatches;
+	}
+	
+	private static byte[] encodeChunk(int[][] sectionIds, int sectionMask) throws IOException {
+		
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		
+		for (int sectionY = 0; sectionY < 16; sectionY++) {
+			
+			if ((sectionMask & 1 << sectionY) == 0) {
+				continue;
+			}
+			
+			//a palette with the ids 0 to 15 that are used as palette indices, too
+			long[] packedIds = new long[SECTION_VOLUME * 4 / 64];
+			
+			for (int i = 0; i < SECTION_VOLUME; i++) {
+				packedIds[i * 4 >> 6] |= (long) sectionIds[sectionY][i] << (i * 4 & 63);
+			}
+			
+			out.writeShort(SECTION_VOLUME);
+			out.writeByte(4);
+			out.writeByte(16);
+			
+			for (int id = 0; id < 16; id++) {
+				out.writeByte(id);
+			}
+			
+			//256 as var int
+			out.writeByte(0x80);
+			out.writeByte(0x02);
+			
+			for (long packed : packedIds) {
+				out.writeLong(packed);
+			}
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	private static int[] decodeSection(ByteBuffer in) {
+		
+		in.getShort();
+		int bits = in.get();
+		int[] palette = null;
+		
+		if (bits <= 8) {
+			
+			palette = new int[readVarInt(in)];
+			
+			for (int i = 0; i < palette.length; i++) {
+				palette[i] = readVarInt(in);
+			}
+		}
+		
+		long[] packedIds = new long[readVarInt(in)];
+		
+		for (int i = 0; i < packedIds.length; i++) {
+			packedIds[i] = in.getLong();
+		}
+		
+		int[] ids = new int[SECTION_VOLUME];
+		
+		for (int i = 0; i < SECTION_VOLUME; i++) {
+			
+			long value = 0;
+			
+			for (int bit = 0; bit < bits; bit++) {
+				
+				int bitIndex = i * bits + bit;
+				value |= (packedIds[bitIndex >> 6] >>> (bitIndex & 63) & 1) << bit;
+			}
+			
+			ids[i] = palette != null ? palette[(int) value] : (int) value;
+		}
+		
+		return ids;
+	}
+	
+	private static int readVarInt(ByteBuffer in) {
+		
+		int value = 0;
+		int shift = 0;
+		byte current;
+		
+		do {
+			current = in.get();
+			value |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		
+		return value;
+	}
+}
@@ -0,0 +1,94 @@
+package benchmarks;
+
+import com.comphenix.protocol.wrappers.ChunkCoordIntPair;
+import com.comphenix.protocol.wrappers.MultiBlockChangeInfo;
+import me.gorgeousone.netherview.DisplayUtils;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
+import testsupport.TestBlockType;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Measures building the multi block change infos of a 5,000 block view session with the block data cached per block type
+ * compared to converting every block again, like it was done before the cache. Without a server the conversion itself is free,
+ * so the count of conversions per build is the relevant result.
+ * Run the main method with the test classpath, it is not executed as unit test.
+ */
+public class FakeBlockPacketBenchmark {
+	
+	private static final int WARMUP_RUNS = 200;
+	private static final int MEASURED_RUNS = 1000;
+	
+	public static void main(String[] args) {
+		
+		Random random = new Random(0);
+		BlockTypeMap viewSession = new BlockTypeMap();
+		
+		//a projection 20 blocks wide, 25 blocks high and 10 blocks deep with 60 different block types
+		for (int x = -10; x < 10; x++) {
+			for (int y = 50; y < 75; y++) {
+				for (int z = 1; z < 11; z++) {
+					viewSession.put(BlockVec.toLong(x, y, z), TestBlockType.of(random.nextInt(60)));
+				}
+			}
+		}
+		
+		System.out.println("blocks in session: " + viewSession.size());
+		
+		measure("converting every block", () -> getSortedByChunksUncached(viewSession));
+		measure("cached block data", () -> DisplayUtils.getSortedByChunks(viewSession));
+	}
+	
+	private static void measure(String name, Runnable build) {
+		
+		long conversionsBefore = TestBlockType.getWrapConversions();
+		build.run();
+		long firstBuildConversions = TestBlockType.getWrapConversions() - conversionsBefore;
+		
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			build.run();
+		}
+		
+		conversionsBefore = TestBlockType.getWrapConversions();
+		long start = System.nanoTime();
+		
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			build.run();
+		}
+		
+		double avgMicros = (System.nanoTime() - start) / 1e3 / MEASURED_RUNS;
+		double avgConversions = (double) (TestBlockType.getWrapConversions() - conversionsBefore) / MEASURED_RUNS;
+		
+		System.out.printf("%-24s %8.1f us per build, %d conversions in the first build, %.0f per later build%n",
+		                  name + ":", avgMicros, firstBuildConversions, avgConversions);
+	}
+	
+	/**
+	 * The grouping of DisplayUtils.getSortedByChunks() with a conversion of every block type instead of the cached block data.
+	 */
+	private static Map<Long, List<MultiBlockChangeInfo>> getSortedByChunksUncached(BlockTypeMap blockCopies) {
+		
+		Map<Long, List<MultiBlockChangeInfo>> sortedBlockInfos = new HashMap<>();
+		
+		blockCopies.forEach((packedPos, blockType) -> {
+			
+			int x = BlockVec.getPackedX(packedPos);
+			int y = BlockVec.getPackedY(packedPos);
+			int z = BlockVec.getPackedZ(packedPos);
+			
+			long chunkKey = (long) (x >> 4) << 32 | (z >> 4) & 0xFFFFFFFFL;
+			List<MultiBlockChangeInfo> chunkBlockInfos = sortedBlockInfos.computeIfAbsent(chunkKey, key -> new ArrayList<>());
+			
+			ChunkCoordIntPair chunkPos = chunkBlockInfos.isEmpty() ? new ChunkCoordIntPair(x >> 4, z >> 4) : chunkBlockInfos.get(0).getChunk();
+			short relativePos = (short) ((x & 15) << 12 | (z & 15) << 8 | y);
+			chunkBlockInfos.add(new MultiBlockChangeInfo(relativePos, ((TestBlockType) blockType).createUncachedWrapped(), chunkPos));
+		});
+		
+		return sortedBlockInfos;
+	}
+}
@@ -0,0 +1,97 @@
+package benchmarks;
+
+import me.gorgeousone.netherview.blockcache.BlockCache;
+import me.gorgeousone.netherview.blockcache.BlockTypePalette;
+import me.gorgeousone.netherview.blockcache.ProjectionCache;
+import me.gorgeousone.netherview.blockcache.RotatedCacheRegistry;
+import me.gorgeousone.netherview.blockcache.Transform;
+import me.gorgeousone.netherview.blocktype.Axis;
+import me.gorgeousone.netherview.portal.Portal;
+import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import org.bukkit.util.Vector;
+import testsupport.TestBlockType;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Measures how the creation of a projection cache for a 32 block view distance scales with the count of threads.
+ * Each projection is released again, so the registry has to copy the rotated cache for the next one.
+ * Run the main method with the test classpath, it is not executed as unit test.
+ */
+public class ProjectionCacheBenchmark {
+	
+	private static final int VIEW_DIST = 32;
+	private static final int WARMUP_RUNS = 50;
+	private static final int MEASURED_RUNS = 200;
+	
+	public static void main(String[] args) {
+		
+		Portal portal = new Portal(
+				null,
+				new AxisAlignedRect(Axis.X, new Vector(0, 64, 0), 2, 3),
+				new HashSet<>(),
+				new HashSet<>(),
+				new BlockVec(-1, 63, 0),
+				new BlockVec(3, 68, 1));
+		
+		BlockCache sourceCache = createRandomCache(portal);
+		
+		Transform transform = new Transform();
+		transform.setRotCenter(new BlockVec(0, 0, 0));
+		transform.setRotY90DegRight();
+		transform.setTranslation(new BlockVec(1000, 0, 1000));
+		
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			RotatedCacheRegistry registry = new RotatedCacheRegistry(pool);
+			
+			for (int i = 0; i < WARMUP_RUNS; i++) {
+				createProjection(portal, sourceCache, transform, registry).release();
+			}
+			
+			long start = System.nanoTime();
+			
+			for (int i = 0; i < MEASURED_RUNS; i++) {
+				createProjection(portal, sourceCache, transform, registry).release();
+			}
+			
+			double avgMillis = (System.nanoTime() - start) / 1e6 / MEASURED_RUNS;
+			System.out.printf("%2d thread(s): %.3f ms per projection%n", threads, avgMillis);
+			pool.shutdown();
+		}
+	}
+	
+	private static ProjectionCache createProjection(Portal portal, BlockCache sourceCache, Transform transform, RotatedCacheRegistry registry) {
+		return ProjectionCache.ofRotatedCache(portal, registry.acquire(sourceCache, transform.getQuarterTurns()), transform);
+	}
+	
+	private static BlockCache createRandomCache(Portal portal) {
+		
+		BlockVec size = new BlockVec(VIEW_DIST + 2, VIEW_DIST + 2, VIEW_DIST + 2);
+		BlockCache cache = new BlockCache(portal, new BlockVec(-VIEW_DIST / 2, 48, 1), size, new Vector(0, 0, 1), null, new BlockTypePalette());
+		
+		BlockVec min = cache.getMin();
+		BlockVec max = cache.getMax();
+		Random random = new Random(0);
+		
+		for (int x = min.getX(); x < max.getX(); x++) {
+			for (int y = min.getY(); y < max.getY(); y++) {
+				for (int z = min.getZ(); z < max.getZ(); z++) {
+					
+					//roughly half of the blocks are invisible and stay empty
+					if (random.nextBoolean()) {
+						cache.setBlockTypeAt(x, y, z, TestBlockType.of(random.nextInt(64)));
+					}
+				}
+			}
+		}
+		
+		return cache;
+	}
+}
@@ -0,0 +1,116 @@
+package benchmarks;
+
+import me.gorgeousone.netherview.blocktype.Axis;
+import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
+import me.gorgeousone.netherview.threedstuff.viewfrustum.DefinedLine;
+import me.gorgeousone.netherview.threedstuff.viewfrustum.ViewFrustum;
+import me.gorgeousone.netherview.threedstuff.viewfrustum.ViewFrustumFactory;
+import org.bukkit.util.Vector;
+
+/**
+ * Compares the half-space point test of ViewFrustum with the previous test intersecting a line of view with the near plane.
+ * Run the main method with the test classpath, it is not executed as unit test.
+ */
+public class ViewFrustumBenchmark {
+	
+	private static final int GRID_SIZE = 32;
+	private static final int WARMUP_RUNS = 20;
+	private static final int MEASURED_RUNS = 50;
+	
+	public static void main(String[] args) {
+		
+		AxisAlignedRect portalRect = new AxisAlignedRect(Axis.X, new Vector(0, 64, 0), 2, 3);
+		Vector viewPoint = new Vector(0.7, 65.6, -3.2);
+		ViewFrustum frustum = ViewFrustumFactory.createFrustum(viewPoint, portalRect, GRID_SIZE);
+		
+		int mismatches = 0;
+		
+		for (int x = -GRID_SIZE / 2; x < GRID_SIZE / 2; x++) {
+			for (int y = 64 - GRID_SIZE / 2; y < 64 + GRID_SIZE / 2; y++) {
+				for (int z = -GRID_SIZE; z < GRID_SIZE; z++) {
+					
+					if (frustum.contains(x, y, z) != containsByLineOfView(frustum, viewPoint, new Vector(x, y, z))) {
+						mismatches++;
+					}
+				}
+			}
+		}
+		
+		System.out.println("points with different results: " + mismatches);
+		
+		for (int i = 0; i < WARMUP_RUNS; i++) {
+			runHalfSpaceTest(frustum);
+			runLineOfViewTest(frustum, viewPoint);
+		}
+		
+		long start = System.nanoTime();
+		int halfSpaceHits = 0;
+		
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			halfSpaceHits += runHalfSpaceTest(frustum);
+		}
+		
+		double halfSpaceMillis = (System.nanoTime() - start) / 1e6 / MEASURED_RUNS;
+		start = System.nanoTime();
+		int lineOfViewHits = 0;
+		
+		for (int i = 0; i < MEASURED_RUNS; i++) {
+			lineOfViewHits += runLineOfViewTest(frustum, viewPoint);
+		}
+		
+		double lineOfViewMillis = (System.nanoTime() - start) / 1e6 / MEASURED_RUNS;
+		
+		System.out.printf("half-space:   %.3f ms per %d points (%d hits)%n", halfSpaceMillis, pointCount(), halfSpaceHits / MEASURED_RUNS);
+		System.out.printf("line of view: %.3f ms per %d points (%d hits)%n", lineOfViewMillis, pointCount(), lineOfViewHits / MEASURED_RUNS);
+	}
+	
+	private static int pointCount() {
+		return GRID_SIZE * GRID_SIZE * 2 * GRID_SIZE;
+	}
+	
+	private static int runHalfSpaceTest(ViewFrustum frustum) {
+		
+		int hits = 0;
+		
+		for (int x = -GRID_SIZE / 2; x < GRID_SIZE / 2; x++) {
+			for (int y = 64 - GRID_SIZE / 2; y < 64 + GRID_SIZE / 2; y++) {
+				for (int z = -GRID_SIZE; z < GRID_SIZE; z++) {
+					if (frustum.contains(x, y, z)) {
+						hits++;
+					}
+				}
+			}
+		}
+		
+		return hits;
+	}
+	
+	private static int runLineOfViewTest(ViewFrustum frustum, Vector viewPoint) {
+		
+		int hits = 0;
+		
+		for (int x = -GRID_SIZE / 2; x < GRID_SIZE / 2; x++) {
+			for (int y = 64 - GRID_SIZE / 2; y < 64 + GRID_SIZE / 2; y++) {
+				for (int z = -GRID_SIZE; z < GRID_SIZE; z++) {
+					if (containsByLineOfView(frustum, viewPoint, new Vector(x, y, z))) {
+						hits++;
+					}
+				}
+			}
+		}
+		
+		return hits;
+	}
+	
+	/**
+	 * The point test ViewFrustum used before, intersecting the line from view point to point with the near plane.
+	 */
+	private static boolean containsByLineOfView(ViewFrustum frustum, Vector viewPoint, Vector point) {
+		
+		AxisAlignedRect nearPlaneRect = frustum.getNearPlaneRect();
+		DefinedLine lineOfView = new DefinedLine(viewPoint, point);
+		Vector pointInNearPlane = nearPlaneRect.getPlane().getIntersection(lineOfView);
+		
+		return pointInNearPlane != null && nearPlaneRect.contains(pointInNearPlane);
+	}
+}
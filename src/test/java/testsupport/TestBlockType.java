@@ -0,0 +1,108 @@
+package testsupport;
+
+import com.comphenix.protocol.wrappers.WrappedBlockData;
+import me.gorgeousone.netherview.blocktype.BlockType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A block type for tests and benchmarks that does not require a running server. Each test block type is identified by
+ * a made up global id and its rotation, it is never equal to a block type of the server.
+ * All tests share this one class, so the same id always results in the same interned block type.
+ */
+public final class TestBlockType extends BlockType {
+	
+	//the interned types by id, so repeated lookups do not create new instances for the global registry
+	private static final Map<Integer, BlockType> TYPES_BY_ID = new ConcurrentHashMap<>();
+	
+	//count of conversions to block data of the server, which are expensive reflective calls for real block types
+	private static final AtomicLong WRAP_CONVERSIONS = new AtomicLong();
+	
+	private final int globalId;
+	private final int rotation;
+	
+	private TestBlockType(int globalId, int rotation) {
+		this.globalId = globalId;
+		this.rotation = rotation;
+	}
+	
+	/**
+	 * Returns the unrotated test block type with the passed global id.
+	 *
+	 * @param globalId a made up id of at least 0
+	 */
+	public static BlockType of(int globalId) {
+		
+		if (globalId < 0) {
+			throw new IllegalArgumentException("Test block type ids cannot be negative: " + globalId);
+		}
+		
+		return TYPES_BY_ID.computeIfAbsent(globalId, id -> intern(new TestBlockType(id, 0)));
+	}
+	
+	/**
+	 * Returns the global id of a test block type, e.g. for a ChunkDataPatcher.BlockIdLookup.
+	 */
+	public static int getGlobalId(BlockType blockType) {
+		return ((TestBlockType) blockType).globalId;
+	}
+	
+	/**
+	 * Returns how often any test block type was converted to block data of the server so far.
+	 */
+	public static long getWrapConversions() {
+		return WRAP_CONVERSIONS.get();
+	}
+	
+	/**
+	 * Converts the block type to block data of the server without the cache of getWrapped(), like block types did before it existed.
+	 */
+	public WrappedBlockData createUncachedWrapped() {
+		return createWrapped();
+	}
+	
+	public int getRotation() {
+		return rotation;
+	}
+	
+	@Override
+	protected BlockType createRotatedCopy(int quarterTurns) {
+		return new TestBlockType(globalId, (rotation + quarterTurns) % 4);
+	}
+	
+	@Override
+	protected WrappedBlockData createWrapped() {
+		
+		//there is no server to create block data with, only the conversion is counted
+		WRAP_CONVERSIONS.incrementAndGet();
+		return null;
+	}
+	
+	@Override
+	public boolean isOccluding() {
+		return true;
+	}
+	
+	@Override
+	public boolean isAir() {
+		return false;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		
+		if (!(o instanceof TestBlockType)) {
+			return false;
+		}
+		
+		TestBlockType other = (TestBlockType) o;
+		return globalId == other.globalId && rotation == other.rotation;
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * globalId + rotation;
+	}
+}
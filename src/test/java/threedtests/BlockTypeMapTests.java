@@ -0,0 +1,160 @@
+package threedtests;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import testsupport.TestBlockType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class BlockTypeMapTests {
+	
+	@Test
+	public void putAndGet() {
+		
+		BlockTypeMap map = new BlockTypeMap();
+		long pos = BlockVec.toLong(-3, 70, 12);
+		
+		Assertions.assertNull(map.get(pos));
+		Assertions.assertFalse(map.containsKey(pos));
+		
+		map.put(pos, TestBlockType.of(1));
+		map.put(pos, TestBlockType.of(2));
+		
+		Assertions.assertEquals(1, map.size());
+		Assertions.assertSame(TestBlockType.of(2), map.get(pos));
+		Assertions.assertSame(TestBlockType.of(2), map.remove(pos));
+		Assertions.assertNull(map.remove(pos));
+		Assertions.assertTrue(map.isEmpty());
+	}
+	
+	/**
+	 * Fills a map far beyond its initial capacity, so it has to grow several times and entries end up in long probe sequences,
+	 * then removes random entries and checks that all remaining ones can still be found.
+	 */
+	@Test
+	public void removeAcrossCollisionChains() {
+		
+		Random random = new Random(0);
+		BlockTypeMap map = new BlockTypeMap();
+		Map<Long, BlockType> expected = new HashMap<>();
+		
+		for (int i = 0; i < 20000; i++) {
+			
+			long pos = BlockVec.toLong(random.nextInt(64) - 32, random.nextInt(256), random.nextInt(64) - 32);
+			BlockType blockType = TestBlockType.of(random.nextInt(20));
+			
+			map.put(pos, blockType);
+			expected.put(pos, blockType);
+		}
+		
+		assertSameEntries(expected, map);
+		
+		Long[] positions = expected.keySet().toArray(new Long[0]);
+		
+		for (int i = 0; i < positions.length; i += 2) {
+			Assertions.assertSame(expected.remove(positions[i]), map.remove(positions[i]));
+		}
+		
+		assertSameEntries(expected, map);
+		
+		//removed positions must be insertable again without duplicating entries
+		for (int i = 0; i < positions.length; i += 4) {
+			
+			map.put(positions[i], TestBlockType.of(0));
+			expected.put(positions[i], TestBlockType.of(0));
+		}
+		
+		assertSameEntries(expected, map);
+	}
+	
+	@Test
+	public void bounds() {
+		
+		BlockTypeMap map = new BlockTypeMap();
+		
+		Assertions.assertFalse(map.mayContain(0, 0, 0));
+		Assertions.assertFalse(map.mayContainChunk(0, 0));
+		
+		map.put(BlockVec.toLong(-5, 60, 20), TestBlockType.of(1));
+		map.put(BlockVec.toLong(17, 80, 31), TestBlockType.of(1));
+		
+		Assertions.assertTrue(map.mayContain(0, 70, 25));
+		Assertions.assertFalse(map.mayContain(0, 59, 25));
+		Assertions.assertFalse(map.mayContain(18, 70, 25));
+		
+		Assertions.assertTrue(map.mayContainChunk(-1, 1));
+		Assertions.assertTrue(map.mayContainChunk(1, 1));
+		Assertions.assertFalse(map.mayContainChunk(2, 1));
+		Assertions.assertFalse(map.mayContainChunk(0, 2));
+		
+		map.clear();
+		Assertions.assertFalse(map.mayContain(0, 70, 25));
+	}
+	
+	@Test
+	public void forEachInChunk() {
+		
+		Random random = new Random(1);
+		
+		//a dense box of blocks, so positions are looked up, and sparse blocks far apart, so the table is scanned
+		BlockTypeMap denseMap = new BlockTypeMap();
+		BlockTypeMap sparseMap = new BlockTypeMap();
+		
+		for (int x = 10; x < 22; x++) {
+			for (int y = 64; y < 70; y++) {
+				for (int z = -4; z < 2; z++) {
+					if (random.nextBoolean()) {
+						denseMap.put(BlockVec.toLong(x, y, z), TestBlockType.of(random.nextInt(5)));
+					}
+				}
+			}
+		}
+		
+		for (int i = 0; i < 300; i++) {
+			sparseMap.put(BlockVec.toLong(random.nextInt(200) - 100, random.nextInt(256), random.nextInt(200) - 100), TestBlockType.of(random.nextInt(5)));
+		}
+		
+		for (BlockTypeMap map : new BlockTypeMap[]{denseMap, sparseMap}) {
+			for (int chunkX = -7; chunkX <= 7; chunkX++) {
+				for (int chunkZ = -7; chunkZ <= 7; chunkZ++) {
+					assertChunkEntries(map, chunkX, chunkZ);
+				}
+			}
+		}
+	}
+	
+	private void assertChunkEntries(BlockTypeMap map, int chunkX, int chunkZ) {
+		
+		Map<Long, BlockType> expected = new HashMap<>();
+		Map<Long, BlockType> visited = new HashMap<>();
+		
+		map.forEach((packedPos, blockType) -> {
+			if (BlockVec.getPackedX(packedPos) >> 4 == chunkX && BlockVec.getPackedZ(packedPos) >> 4 == chunkZ) {
+				expected.put(packedPos, blockType);
+			}
+		});
+		
+		map.forEachInChunk(chunkX, chunkZ, (packedPos, blockType) ->
+				Assertions.assertNull(visited.put(packedPos, blockType), "visited twice: " + BlockVec.fromLong(packedPos)));
+		
+		Assertions.assertEquals(expected, visited, "chunk " + chunkX + ", " + chunkZ);
+	}
+	
+	private void assertSameEntries(Map<Long, BlockType> expected, BlockTypeMap map) {
+		
+		Assertions.assertEquals(expected.size(), map.size());
+		
+		for (Map.Entry<Long, BlockType> entry : expected.entrySet()) {
+			Assertions.assertSame(entry.getValue(), map.get(entry.getKey()));
+		}
+		
+		Map<Long, BlockType> iterated = new HashMap<>();
+		map.forEach(iterated::put);
+		Assertions.assertEquals(expected, iterated);
+	}
+}
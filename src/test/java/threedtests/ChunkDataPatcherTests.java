@@ -0,0 +1,306 @@
+package threedtests;
+
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
+import me.gorgeousone.netherview.viewsession.ChunkDataPatcher;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import testsupport.TestBlockType;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class ChunkDataPatcherTests {
+	
+	private static final int GLOBAL_BITS = 14;
+	private static final int SECTION_VOLUME = 4096;
+	private static final int AIR_ID = 0;
+	private static final byte[] BIOMES = {1, 2, 3, 4};
+	
+	private final ChunkDataPatcher patcher = new ChunkDataPatcher(TestBlockType::getGlobalId, GLOBAL_BITS, AIR_ID);
+	
+	@Test
+	public void chunkWithoutFakeBlocks() {
+		
+		int[][] realIds = createRealIds(new Random(0), 0b11, 12);
+		BlockTypeMap viewSession = new BlockTypeMap();
+		
+		Assertions.assertNull(patcher.patch(0, 0, 0b11, true, encodeChunk(realIds, 0b11, 4), viewSession));
+		
+		//fake blocks in a neighbouring chunk
+		viewSession.put(BlockVec.toLong(20, 5, 3), TestBlockType.of(7));
+		Assertions.assertNull(patcher.patch(0, 0, 0b11, true, encodeChunk(realIds, 0b11, 4), viewSession));
+	}
+	
+	/**
+	 * Patches a few block types into a chunk with palette sections, so the patched section is written with a palette again.
+	 */
+	@Test
+	public void paletteSectionRoundTrip() {
+		
+		Random random = new Random(1);
+		int sectionMask = 0b111;
+		int[][] realIds = createRealIds(random, sectionMask, 12);
+		byte[] data = encodeChunk(realIds, sectionMask, 4);
+		
+		BlockTypeMap viewSession = new BlockTypeMap();
+		
+		for (int i = 0; i < 200; i++) {
+			viewSession.put(BlockVec.toLong(16 + random.nextInt(16), 16 + random.nextInt(16), -16 + random.nextInt(16)), TestBlockType.of(random.nextInt(20)));
+		}
+		
+		ChunkDataPatcher.PatchedChunk patchedChunk = patcher.patch(1, -1, sectionMask, true, data, viewSession);
+		
+		Assertions.assertEquals(sectionMask, patchedChunk.getSectionMask());
+		assertPatchedIds(patchedChunk, 1, -1, realIds, viewSession, 4);
+	}
+	
+	/**
+	 * Patches more block types than fit into a palette into a chunk with global id sections, where ids are split between two longs.
+	 */
+	@Test
+	public void globalSectionRoundTrip() {
+		
+		Random random = new Random(2);
+		int sectionMask = 0b1011;
+		int[][] realIds = createRealIds(random, sectionMask, 1000);
+		byte[] data = encodeChunk(realIds, sectionMask, GLOBAL_BITS);
+		
+		BlockTypeMap viewSession = new BlockTypeMap();
+		
+		for (int x = 0; x < 16; x++) {
+			for (int y = 0; y < 64; y++) {
+				for (int z = 0; z < 8; z++) {
+					viewSession.put(BlockVec.toLong(x, y, z), TestBlockType.of(random.nextInt(600)));
+				}
+			}
+		}
+		
+		ChunkDataPatcher.PatchedChunk patchedChunk = patcher.patch(0, 0, sectionMask, true, data, viewSession);
+		
+		//the empty section 2 is added with the fake blocks
+		Assertions.assertEquals(0b1111, patchedChunk.getSectionMask());
+		assertPatchedIds(patchedChunk, 0, 0, realIds, viewSession, GLOBAL_BITS);
+	}
+	
+	@Test
+	public void missingSection() {
+		
+		Random random = new Random(3);
+		int[][] realIds = createRealIds(random, 0b1, 12);
+		byte[] data = encodeChunk(realIds, 0b1, 4);
+		
+		BlockTypeMap viewSession = new BlockTypeMap();
+		viewSession.put(BlockVec.toLong(3, 40, 9), TestBlockType.of(5));
+		viewSession.put(BlockVec.toLong(4, 41, 9), TestBlockType.of(6));
+		
+		ChunkDataPatcher.PatchedChunk patchedChunk = patcher.patch(0, 0, 0b1, true, data, viewSession);
+		
+		Assertions.assertEquals(0b101, patchedChunk.getSectionMask());
+		int[][] patchedIds = assertPatchedIds(patchedChunk, 0, 0, realIds, viewSession, 4);
+		
+		//only the fake blocks are not air in the added section
+		Assertions.assertEquals(SECTION_VOLUME - 2, Arrays.stream(patchedIds[2]).filter(id -> id == AIR_ID).count());
+		
+		//sections are not added to chunks that only update some sections, the data stays the same
+		ChunkDataPatcher.PatchedChunk partialChunk = patcher.patch(0, 0, 0b1, false, data, viewSession);
+		
+		Assertions.assertEquals(0b1, partialChunk.getSectionMask());
+		Assertions.assertArrayEquals(data, partialChunk.getData());
+	}
+	
+	@Test
+	public void unreadableData() {
+		
+		BlockTypeMap viewSession = new BlockTypeMap();
+		viewSession.put(BlockVec.toLong(0, 0, 0), TestBlockType.of(1));
+		
+		byte[] data = encodeChunk(createRealIds(new Random(4), 0b11, 12), 0b11, 4);
+		
+		Assertions.assertThrows(IllegalArgumentException.class, () -> patcher.patch(0, 0, 0b11, true, Arrays.copyOf(data, data.length / 3), viewSession));
+	}
+	
+	/**
+	 * Decodes the patched chunk and checks that every block has the id of its fake block or otherwise of the real block.
+	 * Returns the decoded ids of all sections.
+	 */
+	private int[][] assertPatchedIds(ChunkDataPatcher.PatchedChunk patchedChunk, int chunkX, int chunkZ, int[][] realIds, BlockTypeMap viewSession, int realBits) {
+		
+		ByteBuffer in = ByteBuffer.wrap(patchedChunk.getData());
+		int[][] patchedIds = new int[16][];
+		
+		for (int sectionY = 0; sectionY < 16; sectionY++) {
+			
+			if ((patchedChunk.getSectionMask() & 1 << sectionY) == 0) {
+				continue;
+			}
+			
+			int nonAirCount = in.getShort();
+			int bits = in.get();
+			int[] ids = decodeSection(in, bits);
+			boolean hasFakeBlocks = false;
+			
+			for (int i = 0; i < SECTION_VOLUME; i++) {
+				
+				int x = chunkX << 4 | i & 15;
+				int y = sectionY << 4 | i >> 8;
+				int z = chunkZ << 4 | i >> 4 & 15;
+				
+				BlockType fakeBlock = viewSession.get(BlockVec.toLong(x, y, z));
+				int expectedId = fakeBlock != null ? TestBlockType.getGlobalId(fakeBlock) : realIds[sectionY] != null ? realIds[sectionY][i] : AIR_ID;
+				
+				Assertions.assertEquals(expectedId, ids[i], "block " + x + ", " + y + ", " + z);
+				hasFakeBlocks |= fakeBlock != null;
+			}
+			
+			Assertions.assertEquals(Arrays.stream(ids).filter(id -> id != AIR_ID).count(), nonAirCount);
+			
+			//sections without fake blocks are copied as they are
+			if (!hasFakeBlocks) {
+				Assertions.assertEquals(realBits, bits);
+			}
+			
+			patchedIds[sectionY] = ids;
+		}
+		
+		byte[] biomes = new byte[in.remaining()];
+		in.get(biomes);
+		Assertions.assertArrayEquals(BIOMES, biomes);
+		return patchedIds;
+	}
+	
+	private int[][] createRealIds(Random random, int sectionMask, int idCount) {
+		
+		int[][] realIds = new int[16][];
+		
+		for (int sectionY = 0; sectionY < 16; sectionY++) {
+			
+			if ((sectionMask & 1 << sectionY) == 0) {
+				continue;
+			}
+			
+			realIds[sectionY] = new int[SECTION_VOLUME];
+			
+			for (int i = 0; i < SECTION_VOLUME; i++) {
+				realIds[sectionY][i] = random.nextInt(idCount);
+			}
+		}
+		
+		return realIds;
+	}
+	
+	/**
+	 * Encodes the sections like the server does, with a palette of the ids 0 to 15 for 4 bits per block and global ids otherwise.
+	 */
+	private byte[] encodeChunk(int[][] sectionIds, int sectionMask, int bits) {
+		
+		ByteBuffer out = ByteBuffer.allocate(16 * (3 + 20 + 5 + SECTION_VOLUME * bits / 8) + BIOMES.length);
+		
+		for (int sectionY = 0; sectionY < 16; sectionY++) {
+			
+			if ((sectionMask & 1 << sectionY) == 0) {
+				continue;
+			}
+			
+			long[] packedIds = new long[SECTION_VOLUME * bits / 64];
+			
+			for (int i = 0; i < SECTION_VOLUME; i++) {
+				
+				long value = sectionIds[sectionY][i];
+				int bitIndex = i * bits;
+				
+				packedIds[bitIndex >> 6] |= value << (bitIndex & 63);
+				
+				if ((bitIndex & 63) + bits > 64) {
+					packedIds[(bitIndex >> 6) + 1] |= value >>> (64 - (bitIndex & 63));
+				}
+			}
+			
+			out.putShort((short) Arrays.stream(sectionIds[sectionY]).filter(id -> id != AIR_ID).count());
+			out.put((byte) bits);
+			
+			if (bits == 4) {
+				
+				writeVarInt(out, 16);
+				
+				for (int id = 0; id < 16; id++) {
+					writeVarInt(out, id);
+				}
+			}
+			
+			writeVarInt(out, packedIds.length);
+			
+			for (long packed : packedIds) {
+				out.putLong(packed);
+			}
+		}
+		
+		out.put(BIOMES);
+		return Arrays.copyOf(out.array(), out.position());
+	}
+	
+	private int[] decodeSection(ByteBuffer in, int bits) {
+		
+		int[] palette = null;
+		
+		if (bits <= 8) {
+			
+			palette = new int[readVarInt(in)];
+			
+			for (int i = 0; i < palette.length; i++) {
+				palette[i] = readVarInt(in);
+			}
+		}
+		
+		long[] packedIds = new long[readVarInt(in)];
+		
+		for (int i = 0; i < packedIds.length; i++) {
+			packedIds[i] = in.getLong();
+		}
+		
+		int[] ids = new int[SECTION_VOLUME];
+		
+		for (int i = 0; i < SECTION_VOLUME; i++) {
+			
+			long value = 0;
+			
+			//reads bit by bit to not share the unpacking logic of the patcher
+			for (int bit = 0; bit < bits; bit++) {
+				
+				int bitIndex = i * bits + bit;
+				value |= (packedIds[bitIndex >> 6] >>> (bitIndex & 63) & 1) << bit;
+			}
+			
+			ids[i] = palette != null ? palette[(int) value] : (int) value;
+		}
+		
+		return ids;
+	}
+	
+	private static int readVarInt(ByteBuffer in) {
+		
+		int value = 0;
+		int shift = 0;
+		byte current;
+		
+		do {
+			current = in.get();
+			value |= (current & 0x7F) << shift;
+			shift += 7;
+		} while ((current & 0x80) != 0);
+		
+		return value;
+	}
+	
+	private static void writeVarInt(ByteBuffer out, int value) {
+		
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) (value & 0x7F | 0x80));
+			value >>>= 7;
+		}
+		
+		out.put((byte) value);
+	}
+}
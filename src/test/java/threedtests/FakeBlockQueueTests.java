@@ -0,0 +1,148 @@
+package threedtests;
+
+import me.gorgeousone.netherview.blocktype.Axis;
+import me.gorgeousone.netherview.blocktype.BlockType;
+import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import me.gorgeousone.netherview.viewsession.BlockPriority;
+import me.gorgeousone.netherview.viewsession.BlockTypeMap;
+import me.gorgeousone.netherview.viewsession.FakeBlockQueue;
+import org.bukkit.util.Vector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import testsupport.TestBlockType;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+public class FakeBlockQueueTests {
+	
+	private static final AxisAlignedRect PORTAL_RECT = new AxisAlignedRect(Axis.X, new Vector(0, 64, 0.5), 2, 3);
+	
+	@Test
+	public void blockPriority() {
+		
+		BlockPriority priority = new BlockPriority(new Vector(1, 65.6, -3), new Vector(0, 0, 1), PORTAL_RECT);
+		
+		//blocks close to the portal come first, then blocks in the look direction
+		Assertions.assertTrue(priority.get(1, 65, 1) < priority.get(1, 65, 6));
+		Assertions.assertTrue(priority.get(1, 65, 6) < priority.get(12, 65, 6));
+		Assertions.assertTrue(priority.get(1, 65, -6) > priority.get(1, 65, 6));
+		Assertions.assertTrue(priority.get(-40, 80, 30) >= 0);
+	}
+	
+	@Test
+	public void pollInPriorityOrder() {
+		
+		Random random = new Random(0);
+		BlockPriority priority = new BlockPriority(new Vector(1, 65.6, -3), new Vector(0.3, -0.2, 1), PORTAL_RECT);
+		BlockTypeMap blocks = createRandomBlocks(random, 2000);
+		
+		FakeBlockQueue queue = new FakeBlockQueue();
+		queue.addAll(blocks, priority);
+		
+		Assertions.assertEquals(blocks.size(), queue.size());
+		//polling single blocks checks the exact order
+		assertPolledInOrder(queue, priority, blocks, 1);
+		Assertions.assertTrue(queue.poll(10).isEmpty());
+	}
+	
+	@Test
+	public void removeAll() {
+		
+		Random random = new Random(1);
+		BlockPriority priority = new BlockPriority(new Vector(1, 65.6, -3), new Vector(0, 0, 1), PORTAL_RECT);
+		BlockTypeMap blocks = createRandomBlocks(random, 1000);
+		BlockTypeMap removedBlocks = new BlockTypeMap();
+		
+		blocks.forEach((packedPos, blockType) -> {
+			if (random.nextInt(3) == 0) {
+				removedBlocks.put(packedPos, blockType);
+			}
+		});
+		
+		FakeBlockQueue queue = new FakeBlockQueue();
+		queue.addAll(blocks, priority);
+		queue.removeAll(removedBlocks);
+		
+		Assertions.assertEquals(blocks.size() - removedBlocks.size(), queue.size());
+		
+		removedBlocks.forEach((packedPos, blockType) -> blocks.remove(packedPos));
+		assertPolledInOrder(queue, priority, blocks, 37);
+	}
+	
+	/**
+	 * Adds blocks while others are still pending after the player turned around, so all pending blocks have to follow the new priority.
+	 */
+	@Test
+	public void addAllSortsAgain() {
+		
+		Random random = new Random(2);
+		BlockPriority oldPriority = new BlockPriority(new Vector(1, 65.6, -3), new Vector(0, 0, 1), PORTAL_RECT);
+		BlockPriority newPriority = new BlockPriority(new Vector(6, 70, -3), new Vector(1, 0, 0.2), PORTAL_RECT);
+		
+		BlockTypeMap blocks = createRandomBlocks(random, 1000);
+		FakeBlockQueue queue = new FakeBlockQueue();
+		queue.addAll(blocks, oldPriority);
+		
+		BlockTypeMap polledBlocks = queue.poll(300);
+		polledBlocks.forEach((packedPos, blockType) -> blocks.remove(packedPos));
+		
+		//new blocks partly replace pending ones with other block types
+		BlockTypeMap addedBlocks = createRandomBlocks(random, 500);
+		addedBlocks.forEach((packedPos, blockType) -> polledBlocks.remove(packedPos));
+		blocks.putAll(addedBlocks);
+		
+		queue.addAll(addedBlocks, newPriority);
+		
+		Assertions.assertEquals(blocks.size(), queue.size());
+		assertPolledInOrder(queue, newPriority, blocks, 100);
+	}
+	
+	/**
+	 * Polls the queue in batches until it is empty and checks that no block is polled with a more urgent priority than a block
+	 * polled before it and that exactly the expected blocks are polled.
+	 */
+	private void assertPolledInOrder(FakeBlockQueue queue, BlockPriority priority, BlockTypeMap expectedBlocks, int batchSize) {
+		
+		Map<Long, BlockType> polledBlocks = new HashMap<>();
+		int[] lastPriority = {Integer.MIN_VALUE};
+		
+		while (!queue.isEmpty()) {
+			
+			BlockTypeMap batch = queue.poll(batchSize);
+			int[] batchMaxPriority = {Integer.MIN_VALUE};
+			
+			Assertions.assertFalse(batch.isEmpty());
+			Assertions.assertTrue(batch.size() <= batchSize);
+			
+			batch.forEach((packedPos, blockType) -> {
+				
+				//priorities are only sorted in steps of a 16th
+				int blockPriority = (int) (priority.get(BlockVec.getPackedX(packedPos), BlockVec.getPackedY(packedPos), BlockVec.getPackedZ(packedPos)) * 16);
+				
+				Assertions.assertTrue(blockPriority >= lastPriority[0], "block " + BlockVec.fromLong(packedPos) + " polled too late");
+				Assertions.assertNull(polledBlocks.put(packedPos, blockType));
+				batchMaxPriority[0] = Math.max(batchMaxPriority[0], blockPriority);
+			});
+			
+			lastPriority[0] = batchMaxPriority[0];
+		}
+		
+		Map<Long, BlockType> expected = new HashMap<>();
+		expectedBlocks.forEach(expected::put);
+		Assertions.assertEquals(expected, polledBlocks);
+	}
+	
+	private BlockTypeMap createRandomBlocks(Random random, int count) {
+		
+		BlockTypeMap blocks = new BlockTypeMap();
+		
+		for (int i = 0; i < count; i++) {
+			blocks.put(BlockVec.toLong(random.nextInt(40) - 20, 50 + random.nextInt(30), random.nextInt(20) - 4), TestBlockType.of(random.nextInt(10)));
+		}
+		
+		return blocks;
+	}
+}
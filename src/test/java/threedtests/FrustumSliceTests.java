@@ -0,0 +1,122 @@
+package threedtests;
+
+import me.gorgeousone.netherview.blocktype.Axis;
+import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
+import me.gorgeousone.netherview.threedstuff.viewfrustum.FrustumSlice;
+import me.gorgeousone.netherview.threedstuff.viewfrustum.ViewFrustum;
+import org.bukkit.util.Vector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+public class FrustumSliceTests {
+	
+	@Test
+	public void sliceRanges() {
+		
+		//a front rectangle of 3x3 blocks and a wider back rectangle reaching one row higher
+		FrustumSlice slice = new FrustumSlice(0, 2, 0, 2, 1, 5, 1, 3);
+		
+		Assertions.assertFalse(slice.isEmpty());
+		Assertions.assertEquals(0, slice.getMinWidth());
+		Assertions.assertEquals(5, slice.getMaxWidth());
+		Assertions.assertEquals(0, slice.getMinY());
+		Assertions.assertEquals(3, slice.getMaxY());
+		
+		Assertions.assertTrue(slice.contains(0, 0));
+		Assertions.assertTrue(slice.contains(5, 3));
+		Assertions.assertFalse(slice.contains(5, 0));
+		Assertions.assertFalse(slice.contains(0, 3));
+		
+		Assertions.assertArrayEquals(new int[]{0, 2, 1, 5}, slice.getRowRanges(1));
+		Assertions.assertArrayEquals(new int[]{1, 0, 1, 5}, slice.getRowRanges(3));
+		
+		//both ranges extend each other in rows where they overlap
+		Assertions.assertEquals(5, slice.getCoveredUntil(0, 1));
+		Assertions.assertEquals(2, slice.getCoveredUntil(0, 0));
+		Assertions.assertEquals(-1, slice.getCoveredUntil(0, 3));
+	}
+	
+	@Test
+	public void emptySlice() {
+		
+		FrustumSlice slice = new FrustumSlice(1, 0, 1, 0, 1, 0, 1, 0);
+		
+		Assertions.assertTrue(slice.isEmpty());
+		Assertions.assertFalse(slice.contains(0, 0));
+		Assertions.assertEquals(-1, slice.getCoveredUntil(0, 0));
+	}
+	
+	@Test
+	public void slicesMatchFrustum() {
+		
+		assertSlicesMatchFrustum(new Vector(2.5, 66, -4.3), new AxisAlignedRect(Axis.X, new Vector(0, 64, 0.5), 2, 3));
+		assertSlicesMatchFrustum(new Vector(-6.1, 70.2, 3.7), new AxisAlignedRect(Axis.X, new Vector(0, 64, 0.5), 4, 5));
+		assertSlicesMatchFrustum(new Vector(7.2, 62.5, 1.4), new AxisAlignedRect(Axis.Z, new Vector(0.5, 64, 0), 3, 3));
+	}
+	
+	@Test
+	public void sliceDifference() {
+		
+		Random random = new Random(0);
+		
+		for (int i = 0; i < 500; i++) {
+			
+			FrustumSlice slice = createRandomSlice(random);
+			FrustumSlice excludedSlice = createRandomSlice(random);
+			Set<Long> visitedBlocks = new HashSet<>();
+			
+			slice.forEachNotIn(excludedSlice, -3, 6, -2, 5, (width, y) ->
+					Assertions.assertTrue(visitedBlocks.add(pack(width, y)), "visited twice: " + width + ", " + y));
+			
+			for (int width = -10; width <= 10; width++) {
+				for (int y = -10; y <= 10; y++) {
+					
+					boolean isInBounds = width >= -3 && width <= 6 && y >= -2 && y <= 5;
+					boolean isInDifference = isInBounds && slice.contains(width, y) && !excludedSlice.contains(width, y);
+					Assertions.assertEquals(isInDifference, visitedBlocks.contains(pack(width, y)), "block " + width + ", " + y);
+				}
+			}
+		}
+	}
+	
+	private FrustumSlice createRandomSlice(Random random) {
+		
+		//a min greater than the max sometimes creates empty rectangles
+		return new FrustumSlice(
+				random.nextInt(12) - 6, random.nextInt(12) - 4, random.nextInt(12) - 6, random.nextInt(12) - 4,
+				random.nextInt(12) - 6, random.nextInt(12) - 4, random.nextInt(12) - 6, random.nextInt(12) - 4);
+	}
+	
+	private long pack(int width, int y) {
+		return (long) width << 32 | y & 0xFFFFFFFFL;
+	}
+	
+	/**
+	 * Checks that every block of the slices of the frustum touches the frustum with at least one vertex and vice versa.
+	 */
+	private void assertSlicesMatchFrustum(Vector viewPoint, AxisAlignedRect nearPlane) {
+		
+		ViewFrustum frustum = new ViewFrustum(viewPoint, nearPlane, 8);
+		boolean isAxisX = nearPlane.getAxis() == Axis.X;
+		
+		for (int depth = -12; depth < 12; depth++) {
+			
+			FrustumSlice slice = frustum.getSlice(depth);
+			
+			for (int width = -20; width < 20; width++) {
+				for (int y = 44; y < 84; y++) {
+					
+					int x = isAxisX ? width : depth;
+					int z = isAxisX ? depth : width;
+					
+					Assertions.assertEquals(frustum.containsBlock(x, y, z), slice.contains(width, y),
+					                        "block " + x + ", " + y + ", " + z);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,129 @@
+package threedtests;
+
+import me.gorgeousone.netherview.blocktype.Axis;
+import me.gorgeousone.netherview.portal.Portal;
+import me.gorgeousone.netherview.portal.PortalGrid;
+import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
+import me.gorgeousone.netherview.threedstuff.BlockVec;
+import org.bukkit.Location;
+import org.bukkit.util.Vector;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+public class PortalGridTests {
+	
+	@Test
+	public void nearestPortalAcrossRings() {
+		
+		Random random = new Random(0);
+		PortalGrid grid = new PortalGrid();
+		List<Portal> portals = new ArrayList<>();
+		
+		//portals spread over a few hundred blocks, so the nearest one is often some rings away from the queried column
+		for (int i = 0; i < 60; i++) {
+			
+			Portal portal = createPortal(random.nextInt(400) - 200, 64 + random.nextInt(40), random.nextInt(400) - 200);
+			
+			//every third portal is linked to the first one
+			if (i % 3 == 0 && !portals.isEmpty()) {
+				portal.setLinkedTo(portals.get(0));
+			}
+			
+			portals.add(portal);
+			grid.add(portal);
+		}
+		
+		for (int i = 0; i < 500; i++) {
+			
+			Location loc = new Location(null, random.nextInt(600) - 300 + 0.5, 64 + random.nextInt(40), random.nextInt(600) - 300 + 0.5);
+			boolean mustBeLinked = random.nextBoolean();
+			double maxDistance = random.nextBoolean() ? Double.MAX_VALUE : 10 + random.nextInt(100);
+			
+			assertNearest(findNearest(portals, loc, mustBeLinked, maxDistance), grid.getNearestPortal(loc, mustBeLinked, maxDistance), loc);
+		}
+	}
+	
+	/**
+	 * Queries a grid with few portals far apart from each other, so the search stops walking the rings and compares all portals instead.
+	 */
+	@Test
+	public void nearestPortalScanningAllPortals() {
+		
+		PortalGrid grid = new PortalGrid();
+		List<Portal> portals = new ArrayList<>();
+		
+		for (int i = 0; i < 4; i++) {
+			
+			Portal portal = createPortal(i % 2 == 0 ? -5000 : 5000, 70, i < 2 ? -5000 : 5000);
+			portals.add(portal);
+			grid.add(portal);
+		}
+		
+		Location loc = new Location(null, 4000, 70, -4500);
+		Assertions.assertSame(portals.get(1), grid.getNearestPortal(loc, false, Double.MAX_VALUE));
+		
+		//a close portal has to be preferred to the far away ones found by the scan
+		Portal closePortal = createPortal(4030, 70, -4530);
+		grid.add(closePortal);
+		Assertions.assertSame(closePortal, grid.getNearestPortal(loc, false, Double.MAX_VALUE));
+		
+		grid.remove(closePortal);
+		Assertions.assertSame(portals.get(1), grid.getNearestPortal(loc, false, Double.MAX_VALUE));
+		Assertions.assertNull(grid.getNearestPortal(loc, false, 100));
+		Assertions.assertNull(grid.getNearestPortal(loc, true, Double.MAX_VALUE));
+	}
+	
+	private void assertNearest(Portal expected, Portal actual, Location loc) {
+		
+		if (expected == null) {
+			Assertions.assertNull(actual, "location " + loc.getX() + ", " + loc.getZ());
+			return;
+		}
+		
+		//portals with the same distance can be returned in any order
+		Assertions.assertNotNull(actual, "location " + loc.getX() + ", " + loc.getZ());
+		Assertions.assertEquals(distanceSquared(expected, loc), distanceSquared(actual, loc), "location " + loc.getX() + ", " + loc.getZ());
+	}
+	
+	private Portal findNearest(List<Portal> portals, Location loc, boolean mustBeLinked, double maxDistance) {
+		
+		Portal nearest = null;
+		double nearestDistSquared = maxDistance * maxDistance;
+		
+		for (Portal portal : portals) {
+			
+			if (mustBeLinked && !portal.isLinked()) {
+				continue;
+			}
+			
+			double distSquared = distanceSquared(portal, loc);
+			
+			if (distSquared <= nearestDistSquared) {
+				nearest = portal;
+				nearestDistSquared = distSquared;
+			}
+		}
+		
+		return nearest;
+	}
+	
+	private double distanceSquared(Portal portal, Location loc) {
+		return portal.getLocation().toVector().distanceSquared(new Vector(loc.getX(), loc.getY(), loc.getZ()));
+	}
+	
+	private Portal createPortal(int x, int y, int z) {
+		
+		return new Portal(
+				null,
+				new AxisAlignedRect(Axis.X, new Vector(x, y, z), 2, 3),
+				new HashSet<>(),
+				new HashSet<>(),
+				new BlockVec(x - 1, y - 1, z),
+				new BlockVec(x + 3, y + 4, z + 1));
+	}
+}
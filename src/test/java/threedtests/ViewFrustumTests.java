@@ -2,6 +2,7 @@ package threedtests;
 
 import me.gorgeousone.netherview.threedstuff.AxisAlignedRect;
 import me.gorgeousone.netherview.blocktype.Axis;
+import me.gorgeousone.netherview.threedstuff.viewfrustum.ViewFrustum;
 import org.bukkit.util.Vector;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
@@ -20,6 +21,21 @@ public class ViewFrustumTests {
 		Assertions.assertFalse(rect.contains(notContainedPoint));
 	}
 	
+	@Test
+	public void pointInFrustum() {
+		
+		AxisAlignedRect nearPlane = new AxisAlignedRect(Axis.X, new Vector(0, 0, 0), 5, 10);
+		Vector viewPoint = new Vector(2.5, 5, -2.5);
+		ViewFrustum frustum = new ViewFrustum(viewPoint, nearPlane, 10);
+		
+		Assertions.assertTrue(frustum.contains(2.5, 5, 1));
+		Assertions.assertTrue(frustum.contains(-2.4999, 5, 2.5));
+		Assertions.assertFalse(frustum.contains(-2.5001, 5, 2.5));
+		Assertions.assertFalse(frustum.contains(-10, 5, 1));
+		Assertions.assertFalse(frustum.contains(2.5, 5, -1));
+		Assertions.assertTrue(frustum.containsBlock(-3, 5, 2));
+	}
+	
 //	@Test
 //	public void pointInCone() {
 //